@@ -62,6 +62,7 @@ CREATE TABLE `ibs_application` (
   `token_life` int(10) unsigned NOT NULL DEFAULT '7200000' COMMENT '令牌生命周期(毫秒)',
   `is_signin_one` bit(1) NOT NULL DEFAULT b'0' COMMENT '是否单点登录:0.允许多点;1.单点登录',
   `is_auto_refresh` bit(1) NOT NULL DEFAULT b'0' COMMENT '是否自动刷新:0.手动刷新;1.自动刷新',
+  `token_mode` tinyint(3) unsigned NOT NULL DEFAULT '0' COMMENT '访问令牌模式:0.不透明令牌;1.HMAC签名令牌',
   `creator` varchar(64) NOT NULL COMMENT '创建人',
   `creator_id` char(32) NOT NULL COMMENT '创建用户ID',
   `created_time` datetime NOT NULL COMMENT '创建时间',
@@ -113,6 +114,19 @@ CREATE TABLE `ibs_function` (
   KEY `idx_function_created_time` (`created_time`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE = utf8mb4_general_ci COMMENT='功能表';
 
+-- ----------------------------
+-- Table structure for ibs_function_auth_code
+-- ----------------------------
+DROP TABLE IF EXISTS `ibs_function_auth_code`;
+CREATE TABLE `ibs_function_auth_code` (
+  `function_id` char(32) NOT NULL COMMENT '功能ID',
+  `auth_code` varchar(64) NOT NULL COMMENT '接口授权码',
+  `nav_id` char(32) NOT NULL COMMENT '导航(末级模块)ID',
+  `app_id` char(32) NOT NULL COMMENT '应用ID',
+  PRIMARY KEY (`function_id`, `auth_code`) USING BTREE,
+  KEY `idx_function_auth_code_app_id` (`app_id`, `function_id`, `nav_id`, `auth_code`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE = utf8mb4_general_ci COMMENT='功能授权码表(由ibs_function.auth_codes拆分)';
+
 
 -- ----------------------------
 -- Table structure for ibu_user
@@ -136,6 +150,7 @@ CREATE TABLE `ibu_user` (
   `creator` varchar(64) NOT NULL COMMENT '创建人',
   `creator_id` char(32) NOT NULL COMMENT '创建人ID',
   `created_time` datetime NOT NULL COMMENT '创建时间',
+  `updated_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`) USING BTREE,
   KEY `idx_user_code` (`code`) USING BTREE,
   UNIQUE KEY `idx_user_account` (`account`) USING BTREE,
@@ -143,7 +158,8 @@ CREATE TABLE `ibu_user` (
   UNIQUE KEY `idx_user_email` (`email`) USING BTREE,
   UNIQUE KEY `idx_user_union_id` (`union_id`) USING BTREE,
   KEY `idx_user_creator_id` (`creator_id`) USING BTREE,
-  KEY `idx_user_created_time` (`created_time`) USING BTREE
+  KEY `idx_user_created_time` (`created_time`) USING BTREE,
+  KEY `idx_user_updated_time` (`updated_time`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT=COMPACT COMMENT='用户表';
 
 
@@ -324,6 +340,21 @@ CREATE TABLE `ibr_role_member` (
   KEY `idx_role_member_member_id` (`member_id`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT=COMPACT COMMENT='角色成员表';
 
+-- ----------------------------
+-- Table structure for ibr_user_role
+-- ----------------------------
+DROP TABLE IF EXISTS `ibr_user_role`;
+CREATE TABLE `ibr_user_role` (
+  `user_id` char(32) NOT NULL COMMENT '用户ID',
+  `tenant_id` char(32) DEFAULT NULL COMMENT '角色所属租户ID',
+  `role_id` char(32) NOT NULL COMMENT '角色ID',
+  `member_type` tinyint(1) unsigned NOT NULL COMMENT '来源成员类型:1.用户;2.用户组;3.职位',
+  `member_id` char(32) NOT NULL COMMENT '来源成员ID',
+  PRIMARY KEY (`user_id`, `role_id`, `member_id`) USING BTREE,
+  KEY `idx_user_role_user_id` (`user_id`, `tenant_id`, `role_id`) USING BTREE,
+  KEY `idx_user_role_role_id` (`role_id`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT=COMPACT COMMENT='用户角色表(由角色成员展开,与ibv_user_roles一致)';
+
 
 -- ----------------------------
 -- View structure for ibv_user_roles
@@ -600,6 +631,25 @@ select replace(uuid(), '-', ''), 1, (select id from ibr_role where app_id = '9dd
 insert ibr_role_member(id, `type`, role_id, member_id)
 select replace(uuid(), '-', ''), 2, (select id from ibr_role where tenant_id = '2564cd559cd340f0b81409723fd8632a'), id from ibu_group;
 
+-- ----------------------------
+-- 初始化用户角色
+-- ----------------------------
+insert ibr_user_role(user_id, tenant_id, role_id, member_type, member_id)
+select m.member_id, r.tenant_id, m.role_id, 1, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 1
+union select g.user_id, r.tenant_id, m.role_id, 2, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 2
+join ibu_group_member g on g.group_id = m.member_id
+union select p.user_id, r.tenant_id, m.role_id, 3, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 3
+join ibo_organize_member p on p.post_id = m.member_id join ibo_organize o on o.id = p.post_id;
+
+-- ----------------------------
+-- 初始化功能授权码
+-- ----------------------------
+insert ibs_function_auth_code(function_id, auth_code, nav_id, app_id)
+select distinct f.id, substring_index(substring_index(f.auth_codes, ',', h.help_topic_id + 1), ',', - 1), f.nav_id, n.app_id
+from ibs_function f
+join ibs_navigator n on n.id = f.nav_id
+join mysql.help_topic h on h.help_topic_id < (length(f.auth_codes) - length(replace(f.auth_codes, ',', '')) + 1);
+
 -- ----------------------------
 -- 初始化功能权限
 -- ---------------------------- 
@@ -619,6 +669,7 @@ MODIFY COLUMN `id` char(32) NOT NULL COMMENT '主键(UUID)' FIRST;
 -- ---------------------------- 
 INSERT `ibi_interface`(`id`, `name`, `method`, `url`, `auth_code`, `limit_gap`, `limit_cycle`, `limit_max`, `message`, `is_verify`, `is_limit`, `created_time`) VALUES 
 (replace(uuid(), '-', ''), '获取Code', 'GET', '/base/auth/v1.0/tokens/codes', NULL, 1, 86400, 360, '获取Code接口每24小时调用次数为360次,请合理使用', 0, 1, now()),
+(replace(uuid(), '-', ''), '获取验证码发送状态', 'GET', '/base/auth/v1.0/tokens/codes/{id}/status', NULL, NULL, NULL, NULL, NULL, 0, 0, now()),
 (replace(uuid(), '-', ''), '获取Token', 'POST', '/base/auth/v1.0/tokens', NULL, 1, 86400, 360, '获取Token接口每24小时调用次数为360次,请合理使用', 0, 1, now()),
 (replace(uuid(), '-', ''), '通过微信授权码获取Token', 'POST', '/base/auth/v1.0/tokens/withWechatCode', NULL, 1, 86400, 360, '获取Token接口每24小时调用次数为360次,请合理使用', 0, 1, now()),
 (replace(uuid(), '-', ''), '通过微信UnionId获取Token', 'POST', '/base/auth/v1.0/tokens/withWechatUnionId', NULL, 1, 86400, 360, '获取Token接口每24小时调用次数为360次,请合理使用', 0, 1, now()),
@@ -629,6 +680,8 @@ INSERT `ibi_interface`(`id`, `name`, `method`, `url`, `auth_code`, `limit_gap`,
 (replace(uuid(), '-', ''), '获取用户可选租户', 'GET', '/base/auth/v1.0/{id}/tenants', NULL, 1, NULL, NULL, NULL, 0, 1, now()),
 (replace(uuid(), '-', ''), '获取用户导航栏', 'GET', '/base/auth/v1.0/navigators', NULL, 1, NULL, NULL, NULL, 1, 1, now()),
 (replace(uuid(), '-', ''), '获取模块功能', 'GET', '/base/auth/v1.0/navigators/{id}/functions', NULL, 1, NULL, NULL, NULL, 1, 1, now()),
+(replace(uuid(), '-', ''), '批量验证授权', 'POST', '/base/auth/v1.0/tokens/permits', NULL, NULL, NULL, NULL, NULL, 1, 0, now()),
+(replace(uuid(), '-', ''), '获取调用许可', 'POST', '/base/auth/v1.0/limits', NULL, NULL, NULL, NULL, NULL, 0, 0, now()),
 
 (replace(uuid(), '-', ''), '获取接口配置列表', 'GET', '/base/auth/v1.0/configs', 'getConfig', 1, NULL, NULL, NULL, 1, 1, now()),
 (replace(uuid(), '-', ''), '获取接口配置详情', 'GET', '/base/auth/v1.0/configs/{id}', 'getConfig', 1, NULL, NULL, NULL, 1, 1, now()),
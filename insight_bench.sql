@@ -0,0 +1,235 @@
+-- ----------------------------
+-- 授权码查询基准测试
+-- 用法: 在独立的库中先执行 insight_base.sql, 再执行本脚本
+--   create database insight_bench default charset utf8mb4; use insight_bench;
+--   source insight_base.sql; source insight_bench.sql;
+-- 数据规模: 1个应用, 1000个模块, 10万个功能(每功能3个授权码), 100万用户(用户查询部分增至200万), 200个角色, 1万个用户组
+-- ----------------------------
+SET NAMES utf8mb4;
+SET @app_id = 'b0000000000000000000000000000001';
+SET @tenant_id = '2564cd559cd340f0b81409723fd8632a';
+
+-- ----------------------------
+-- 序号表: 0 ~ 999999
+-- ----------------------------
+DROP TABLE IF EXISTS `bench_digit`;
+CREATE TABLE `bench_digit` (`n` int NOT NULL PRIMARY KEY) ENGINE=InnoDB;
+INSERT bench_digit VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9);
+
+DROP TABLE IF EXISTS `bench_seq`;
+CREATE TABLE `bench_seq` (`n` int NOT NULL PRIMARY KEY) ENGINE=InnoDB;
+INSERT bench_seq
+select a.n + b.n * 10 + c.n * 100 + d.n * 1000 + e.n * 10000 + f.n * 100000
+from bench_digit a, bench_digit b, bench_digit c, bench_digit d, bench_digit e, bench_digit f;
+
+-- ----------------------------
+-- 应用、模块、功能
+-- ----------------------------
+INSERT ibs_application (`id`, `index`, `name`, `alias`, `permit_life`, `token_life`, `creator`, `creator_id`, `created_time`) VALUES
+(@app_id, 99, '基准测试', 'BENCH', 300000, 7200000, '系统', '00000000000000000000000000000000', now());
+INSERT ibt_tenant_app (`id`, `tenant_id`, `app_id`, `expire_date`) VALUES
+(replace(uuid(), '-', ''), @tenant_id, @app_id, '2099-12-31');
+
+INSERT ibs_navigator(`id`, `parent_id`, `app_id`, `type`, `index`, `name`, `creator`, `creator_id`, `created_time`)
+select concat('a', lpad(hex(s.n + 1), 31, '0')), null, @app_id, 2, s.n, concat('模块', s.n), '系统', '00000000000000000000000000000000', now()
+from bench_seq s where s.n < 1000;
+
+INSERT ibs_function(`id`, `nav_id`, `type`, `index`, `name`, `auth_codes`, `creator`, `creator_id`, `created_time`)
+select concat('f', lpad(hex(s.n + 1), 31, '0')), concat('a', lpad(hex(s.n % 1000 + 1), 31, '0')), 1, s.n div 1000, concat('功能', s.n),
+       concat('read', s.n, ',write', s.n, ',audit', s.n % 100), '系统', '00000000000000000000000000000000', now()
+from bench_seq s where s.n < 100000;
+
+-- ----------------------------
+-- 用户、角色、用户组
+-- ----------------------------
+INSERT ibu_user (`id`, `name`, `account`, `is_builtin`, `creator`, `creator_id`, `created_time`)
+select concat('e', lpad(hex(s.n + 1), 31, '0')), concat('用户', s.n), concat('bench', s.n), 0, '系统', '00000000000000000000000000000000', now()
+from bench_seq s;
+
+INSERT ibr_role (id, tenant_id, app_id, name, is_builtin, creator, creator_id, `created_time`)
+select concat('c', lpad(hex(s.n + 1), 31, '0')), @tenant_id, @app_id, concat('角色', s.n), 0, '系统', '00000000000000000000000000000000', now()
+from bench_seq s where s.n < 200;
+
+INSERT ibu_group (`id`, `tenant_id`, `code`, `name`, `is_builtin`, `creator`, `creator_id`, `created_time`)
+select concat('b', lpad(hex(s.n + 1), 31, '0')), @tenant_id, concat('G', s.n), concat('用户组', s.n), 0, '系统', '00000000000000000000000000000000', now()
+from bench_seq s where s.n < 10000;
+
+-- 每个用户直接属于1个角色,并通过用户组间接属于另1个角色
+INSERT ibr_role_member(id, `type`, role_id, member_id)
+select replace(uuid(), '-', ''), 1, concat('c', lpad(hex(s.n % 200 + 1), 31, '0')), concat('e', lpad(hex(s.n + 1), 31, '0'))
+from bench_seq s;
+
+INSERT ibu_group_member(`id`, `group_id`, `user_id`)
+select replace(uuid(), '-', ''), concat('b', lpad(hex(s.n % 10000 + 1), 31, '0')), concat('e', lpad(hex(s.n + 1), 31, '0'))
+from bench_seq s;
+
+INSERT ibr_role_member(id, `type`, role_id, member_id)
+select replace(uuid(), '-', ''), 2, concat('c', lpad(hex((s.n * 7) % 200 + 1), 31, '0')), concat('b', lpad(hex(s.n + 1), 31, '0'))
+from bench_seq s where s.n < 10000;
+
+-- 每个角色授权5000个功能,其中1%为拒绝
+INSERT ibr_role_permit(`id`, `role_id`, `function_id`, `permit`)
+select replace(uuid(), '-', ''), concat('c', lpad(hex(s.n div 5000 + 1), 31, '0')),
+       concat('f', lpad(hex((s.n * 37) % 100000 + 1), 31, '0')), if(s.n % 100 = 0, 0, 1)
+from bench_seq s;
+
+-- ----------------------------
+-- 拆分功能授权码(与服务的同步操作相同)
+-- ----------------------------
+DELETE FROM ibs_function_auth_code;
+INSERT ibs_function_auth_code(function_id, auth_code, nav_id, app_id)
+select distinct f.id, substring_index(substring_index(f.auth_codes, ',', h.help_topic_id + 1), ',', - 1), f.nav_id, n.app_id
+from ibs_function f
+join ibs_navigator n on n.id = f.nav_id
+join mysql.help_topic h on h.help_topic_id < (length(f.auth_codes) - length(replace(f.auth_codes, ',', '')) + 1);
+
+ANALYZE TABLE ibs_function, ibs_function_auth_code, ibs_navigator, ibr_role_permit, ibr_role_member, ibu_group_member;
+
+SET @user_id = concat('e', lpad(hex(123457), 31, '0'));
+
+-- ----------------------------
+-- 原查询: help_topic拆分
+-- ----------------------------
+EXPLAIN
+select substring_index(substring_index(f.auth_codes, ',', h.help_topic_id + 1), ',', - 1) as auth_code
+from ibs_function f join ibs_navigator n on n.id = f.nav_id and n.app_id = @app_id
+join ibr_role_permit p on p.function_id = f.id join ibv_user_roles r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+join mysql.help_topic h on h.help_topic_id < (length(f.auth_codes) - length(replace(f.auth_codes, ',', '')) + 1)
+group by n.app_id, f.nav_id, auth_code having min(p.permit) > 0;
+
+SET @t = now(6);
+select count(*) from (
+select substring_index(substring_index(f.auth_codes, ',', h.help_topic_id + 1), ',', - 1) as auth_code
+from ibs_function f join ibs_navigator n on n.id = f.nav_id and n.app_id = @app_id
+join ibr_role_permit p on p.function_id = f.id join ibv_user_roles r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+join mysql.help_topic h on h.help_topic_id < (length(f.auth_codes) - length(replace(f.auth_codes, ',', '')) + 1)
+group by n.app_id, f.nav_id, auth_code having min(p.permit) > 0) l;
+select 'help_topic' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+
+-- ----------------------------
+-- 新查询: 功能授权码表
+-- ----------------------------
+EXPLAIN
+select c.auth_code from ibs_function_auth_code c
+join ibr_role_permit p on p.function_id = c.function_id join ibv_user_roles r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+where c.app_id = @app_id group by c.nav_id, c.auth_code having min(p.permit) > 0;
+
+SET @t = now(6);
+select count(*) from (
+select c.auth_code from ibs_function_auth_code c
+join ibr_role_permit p on p.function_id = c.function_id join ibv_user_roles r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+where c.app_id = @app_id group by c.nav_id, c.auth_code having min(p.permit) > 0) l;
+select 'auth_code_table' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+
+-- ----------------------------
+-- 结果一致性: 两个查询的差集应为空
+-- ----------------------------
+select count(*) as `mismatches` from (
+select substring_index(substring_index(f.auth_codes, ',', h.help_topic_id + 1), ',', - 1) as auth_code
+from ibs_function f join ibs_navigator n on n.id = f.nav_id and n.app_id = @app_id
+join ibr_role_permit p on p.function_id = f.id join ibv_user_roles r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+join mysql.help_topic h on h.help_topic_id < (length(f.auth_codes) - length(replace(f.auth_codes, ',', '')) + 1)
+group by n.app_id, f.nav_id, auth_code having min(p.permit) > 0) o
+left join (
+select c.auth_code from ibs_function_auth_code c
+join ibr_role_permit p on p.function_id = c.function_id join ibv_user_roles r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+where c.app_id = @app_id group by c.nav_id, c.auth_code having min(p.permit) > 0) x on x.auth_code = o.auth_code
+where x.auth_code is null;
+
+-- ----------------------------
+-- 用户角色: 视图(三路union) 与 扁平表
+-- ----------------------------
+DELETE FROM ibr_user_role;
+INSERT ibr_user_role(user_id, tenant_id, role_id, member_type, member_id)
+select m.member_id, r.tenant_id, m.role_id, 1, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 1
+union select g.user_id, r.tenant_id, m.role_id, 2, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 2
+join ibu_group_member g on g.group_id = m.member_id
+union select p.user_id, r.tenant_id, m.role_id, 3, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 3
+join ibo_organize_member p on p.post_id = m.member_id join ibo_organize o on o.id = p.post_id;
+
+ANALYZE TABLE ibr_user_role;
+
+EXPLAIN
+select c.auth_code from ibs_function_auth_code c
+join ibr_role_permit p on p.function_id = c.function_id join ibr_user_role r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+where c.app_id = @app_id group by c.nav_id, c.auth_code having min(p.permit) > 0;
+
+SET @t = now(6);
+select count(*) from (
+select c.auth_code from ibs_function_auth_code c
+join ibr_role_permit p on p.function_id = c.function_id join ibr_user_role r on r.role_id = p.role_id and r.user_id = @user_id and r.tenant_id = @tenant_id
+where c.app_id = @app_id group by c.nav_id, c.auth_code having min(p.permit) > 0) l;
+select 'user_role_table' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+
+-- 扁平表与视图的差异应为0
+select count(*) as `drifts` from (
+select v.user_id from ibv_user_roles v left join ibr_user_role u on u.user_id = v.user_id and u.role_id = v.role_id and u.tenant_id <=> v.tenant_id
+where u.user_id is null
+union all select u.user_id from ibr_user_role u left join ibv_user_roles v on v.user_id = u.user_id and v.role_id = u.role_id and v.tenant_id <=> u.tenant_id
+where v.user_id is null) d;
+
+-- ----------------------------
+-- 用户查询: OR条件 与 按标识类型查询索引
+-- 用户增至200万,每个用户设置手机号、E-mail和UnionID;每种标识各查询1000次
+-- ----------------------------
+INSERT ibu_user (`id`, `name`, `account`, `is_builtin`, `creator`, `creator_id`, `created_time`)
+select concat('e', lpad(hex(s.n + 1000001), 31, '0')), concat('用户', s.n + 1000000), concat('bench', s.n + 1000000), 0, '系统', '00000000000000000000000000000000', now()
+from bench_seq s;
+
+UPDATE ibu_user set mobile = concat('139', lpad(conv(substring(id, 2), 16, 10) - 1, 8, '0')),
+  email = concat(account, '@insight.com'), union_id = concat('oBench', lpad(conv(substring(id, 2), 16, 10) - 1, 22, '0'))
+where account like 'bench%';
+
+ANALYZE TABLE ibu_user;
+
+EXPLAIN
+select * from ibu_user where id = '13900123456' or account = '13900123456' or mobile = '13900123456' or email = '13900123456'
+or union_id = '13900123456' limit 1;
+
+EXPLAIN
+select * from ibu_user where mobile = '13900123456' union all select * from ibu_user where account = '13900123456' limit 1;
+
+DROP PROCEDURE IF EXISTS bench_user_lookup;
+DELIMITER $$
+-- typed: 0.OR条件;1.按类型查询; kind: 1.ID;2.手机号;3.E-mail;4.类型不确定;5.账号
+CREATE PROCEDURE bench_user_lookup(IN typed int, IN kind int)
+BEGIN
+  DECLARE i int DEFAULT 0;
+  DECLARE n int;
+  DECLARE k varchar(64);
+  DECLARE v char(32);
+  WHILE i < 1000 DO
+    SET n = floor(rand(i) * 2000000);
+    SET k = case kind when 1 then concat('e', lpad(hex(n + 1), 31, '0')) when 2 then concat('139', lpad(n, 8, '0'))
+            when 3 then concat('bench', n, '@insight.com') when 4 then concat('oBench', lpad(n, 22, '0')) else concat('bench', n) end;
+    IF typed = 0 THEN
+      select id into v from ibu_user where id = k or account = k or mobile = k or email = k or union_id = k limit 1;
+    ELSEIF kind = 1 THEN
+      select id into v from (select id from ibu_user where id = k union all select id from ibu_user where account = k) u limit 1;
+    ELSEIF kind = 2 THEN
+      select id into v from (select id from ibu_user where mobile = k union all select id from ibu_user where account = k) u limit 1;
+    ELSEIF kind = 3 THEN
+      select id into v from (select id from ibu_user where email = k union all select id from ibu_user where account = k) u limit 1;
+    ELSE
+      select id into v from (select id from ibu_user where mobile = k union all select id from ibu_user where email = k
+        union all select id from ibu_user where union_id = k union all select id from ibu_user where account = k) u limit 1;
+    END IF;
+    SET i = i + 1;
+  END WHILE;
+END$$
+DELIMITER ;
+
+SET @t = now(6); CALL bench_user_lookup(0, 1); select 'or_id' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(1, 1); select 'typed_id' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(0, 2); select 'or_mobile' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(1, 2); select 'typed_mobile' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(0, 3); select 'or_email' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(1, 3); select 'typed_email' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(0, 4); select 'or_union_id' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(1, 4); select 'typed_union_id' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(0, 5); select 'or_account' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+SET @t = now(6); CALL bench_user_lookup(1, 5); select 'typed_account' as `query`, timestampdiff(microsecond, @t, now(6)) / 1000 as `ms`;
+
+DROP PROCEDURE IF EXISTS bench_user_lookup;
+DROP TABLE IF EXISTS `bench_seq`;
+DROP TABLE IF EXISTS `bench_digit`;
@@ -0,0 +1,216 @@
+package com.insight.base.auth.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/30
+ * @remark 字符串布隆过滤器(线程安全,只增不删)
+ * <p>
+ * 以128位MurmurHash3的两个64位结果做双重哈希(h1 + i * h2)得到k个位下标。
+ * 判定为不存在的元素一定不存在;判定为存在的元素有一定的误判率。
+ */
+public final class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashCount;
+    private final long expected;
+
+    /**
+     * 构造方法
+     *
+     * @param expected 预期元素数量
+     * @param fpp      预期误判率(0 < fpp < 1)
+     */
+    public BloomFilter(long expected, double fpp) {
+        if (expected <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("预期元素数量须大于0,误判率须在0和1之间");
+        }
+
+        long bits = (long) (-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+
+        this.words = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expected * Math.log(2)));
+        this.expected = expected;
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param value 元素
+     */
+    public void put(String value) {
+        long[] hash = hash(value);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitSize;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old;
+            do {
+                old = words.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, old, old | mask));
+
+            combined += hash[1];
+        }
+    }
+
+    /**
+     * 元素是否可能存在
+     *
+     * @param value 元素
+     * @return 返回false时元素一定不存在
+     */
+    public boolean mightContain(String value) {
+        long[] hash = hash(value);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitSize;
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+
+            combined += hash[1];
+        }
+
+        return true;
+    }
+
+    /**
+     * 位数
+     *
+     * @return 位数
+     */
+    public long bitSize() {
+        return bitSize;
+    }
+
+    /**
+     * 哈希函数数量
+     *
+     * @return 哈希函数数量
+     */
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 预期元素数量
+     *
+     * @return 预期元素数量
+     */
+    public long expected() {
+        return expected;
+    }
+
+    /**
+     * 按已置位比例估算当前误判率
+     *
+     * @return 误判率
+     */
+    public double expectedFpp() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+
+        return Math.pow((double) set / bitSize, hashCount);
+    }
+
+    /**
+     * MurmurHash3 x64 128位哈希
+     *
+     * @param value 字符串
+     * @return 两个64位哈希值
+     */
+    private static long[] hash(String value) {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        long c1 = 0x87c37b91114253d5L;
+        long c2 = 0x4cf5ad432745937fL;
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = data.length >>> 4;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i << 4);
+            long k2 = getLong(data, (i << 4) + 8);
+
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int tail = blocks << 4;
+        for (int i = data.length - 1; i >= tail; i--) {
+            int shift = ((i - tail) & 7) << 3;
+            if (i - tail >= 8) {
+                k2 |= (data[i] & 0xffL) << shift;
+            } else {
+                k1 |= (data[i] & 0xffL) << shift;
+            }
+        }
+
+        if (k2 != 0) {
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+        }
+
+        if (k1 != 0) {
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+
+        h1 ^= data.length;
+        h2 ^= data.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = mix(h1);
+        h2 = mix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        return new long[]{h1, h2};
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = value << 8 | (data[offset + i] & 0xffL);
+        }
+
+        return value;
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb93fe53a87cdL;
+        k ^= k >>> 33;
+
+        return k;
+    }
+}
@@ -1,10 +1,16 @@
 package com.insight.base.auth.common;
 
+import com.insight.base.auth.common.cache.AccountFilter;
+import com.insight.base.auth.common.cache.AppPolicy;
+import com.insight.base.auth.common.cache.AppPolicyCache;
+import com.insight.base.auth.common.cache.AuthCodeDictionary;
+import com.insight.base.auth.common.cache.PermitCache;
+import com.insight.base.auth.common.cache.TokenCache;
+import com.insight.base.auth.common.cache.UserInfoCache;
 import com.insight.base.auth.common.client.MessageClient;
 import com.insight.base.auth.common.client.RabbitClient;
 import com.insight.base.auth.common.dto.*;
 import com.insight.base.auth.common.mapper.AuthMapper;
-import com.insight.utils.DateHelper;
 import com.insight.utils.Json;
 import com.insight.utils.Redis;
 import com.insight.utils.Util;
@@ -12,18 +18,40 @@ import com.insight.utils.encrypt.Encryptor;
 import com.insight.utils.pojo.*;
 import com.insight.utils.wechat.WeChatHelper;
 import com.insight.utils.wechat.WeChatUser;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import static com.insight.utils.pojo.TokenInfo.TIME_OUT;
 
@@ -38,12 +66,105 @@ public class Core {
     private final AuthMapper mapper;
     private final WeChatHelper weChatHelper;
     private final MessageClient client;
+    private final TokenCache tokenCache;
+    private final TokenSigner signer;
+    private final UserInfoCache userInfoCache;
+    private final AppPolicyCache appPolicyCache;
+    private final PermitCache permitCache;
+    private final AuthCodeDictionary dictionary;
+    private final AccountFilter accountFilter;
+    private final SmsDispatcher smsDispatcher;
+    private final RedisTemplate<String, byte[]> byteTemplate;
+    private final StringRedisTemplate stringTemplate;
+    private final DistributionSummary roundTrips;
+
+    /**
+     * 正在加载中的账号
+     */
+    private final Map<String, CompletableFuture<String>> loadings = new ConcurrentHashMap<>();
+
+    /**
+     * 正在后台更新授权码的令牌
+     */
+    private final Set<String> refreshings = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 后台更新令牌授权码的线程池(有界队列,队列已满时放弃本次更新)
+     */
+    private final ThreadPoolExecutor permitRefresher = new ThreadPoolExecutor(PERMIT_REFRESH_THREADS, PERMIT_REFRESH_THREADS,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PERMIT_REFRESH_QUEUE_SIZE), r -> {
+        Thread thread = new Thread(r, "permit-refresher");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    /**
+     * 账号加载租约时间(毫秒),0表示不使用跨节点租约
+     */
+    private final long leaseTime;
+
+    /**
+     * 是否以二进制格式缓存令牌(否则为JSON格式)
+     */
+    private final boolean binaryToken;
 
     /**
      * RSA私钥
      */
     private static final String PRIVATE_KEY = "";
 
+    /**
+     * 账号加载租约状态:加载中(后接持有者标识)/账号不存在
+     */
+    private static final String LEASE_LOADING = "loading";
+    private static final String LEASE_NONE = "none";
+
+    /**
+     * 等待其他节点加载账号时的轮询间隔(毫秒)
+     */
+    private static final long LEASE_POLL_INTERVAL = 50;
+
+    /**
+     * 后台更新令牌授权码的线程数、队列容量和比较替换的最大尝试次数
+     */
+    private static final int PERMIT_REFRESH_THREADS = 2;
+    private static final int PERMIT_REFRESH_QUEUE_SIZE = 1000;
+    private static final int PERMIT_REFRESH_ATTEMPTS = 3;
+
+    /**
+     * 令牌数据未变化时替换令牌数据并保持剩余有效时间:1.已替换;0.令牌数据已变化;-1.令牌不存在或已过期
+     */
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = redis.call('PTTL', KEYS[1])\n" +
+            "if ttl <= 0 then return -1 end\n" +
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end\n" +
+            "redis.call('SET', KEYS[1], ARGV[2], 'PX', ttl)\n" +
+            "return 1", Long.class);
+
+    /**
+     * 租约仍由本次加载持有时删除租约:1.已删除;0.租约已过期或被其他节点持有
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end\n" +
+            "return 0", Long.class);
+
+    /**
+     * 登录标识类型:用户ID/手机号/E-mail/类型不确定(可能是其他格式的手机号、E-mail或微信UnionID),均可能同时是账号
+     */
+    static final int KEY_ID = 1;
+    static final int KEY_MOBILE = 2;
+    static final int KEY_EMAIL = 3;
+    static final int KEY_OTHER = 4;
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-fA-F]{32}");
+    private static final Pattern MOBILE_PATTERN = Pattern.compile("1[0-9]{10}");
+
+    /**
+     * 挑战类型:密码登录/短信验证码登录
+     */
+    private static final int CHALLENGE_PASSWORD = 0;
+    private static final int CHALLENGE_SMS = 1;
+
     /**
      * Code生命周期(30秒)
      */
@@ -62,18 +183,52 @@ public class Core {
     /**
      * 构造函数
      *
-     * @param mapper       AuthMapper
-     * @param weChatHelper WeChatHelper
-     * @param client       MessageClient
+     * @param mapper         AuthMapper
+     * @param weChatHelper   WeChatHelper
+     * @param client         MessageClient
+     * @param tokenCache     TokenCache
+     * @param signer         TokenSigner
+     * @param userInfoCache  UserInfoCache
+     * @param appPolicyCache AppPolicyCache
+     * @param permitCache    PermitCache
+     * @param dictionary     AuthCodeDictionary
+     * @param accountFilter  AccountFilter
+     * @param smsDispatcher  SmsDispatcher
+     * @param byteTemplate   以字节数组读写Value的RedisTemplate
+     * @param stringTemplate StringRedisTemplate
+     * @param registry       MeterRegistry
+     * @param tokenFormat    令牌缓存格式(json/binary)
+     * @param leaseTime      账号加载租约时间(毫秒)
      */
-    public Core(AuthMapper mapper, WeChatHelper weChatHelper, MessageClient client) {
+    public Core(AuthMapper mapper, WeChatHelper weChatHelper, MessageClient client, TokenCache tokenCache, TokenSigner signer,
+                UserInfoCache userInfoCache, AppPolicyCache appPolicyCache, PermitCache permitCache, AuthCodeDictionary dictionary,
+                AccountFilter accountFilter, SmsDispatcher smsDispatcher, RedisTemplate<String, byte[]> byteTemplate,
+                StringRedisTemplate stringTemplate, MeterRegistry registry,
+                @Value("${insight.auth.token-format:json}") String tokenFormat,
+                @Value("${insight.auth.account-lease:0}") long leaseTime) {
         this.mapper = mapper;
         this.weChatHelper = weChatHelper;
         this.client = client;
+        this.tokenCache = tokenCache;
+        this.signer = signer;
+        this.userInfoCache = userInfoCache;
+        this.appPolicyCache = appPolicyCache;
+        this.permitCache = permitCache;
+        this.dictionary = dictionary;
+        this.accountFilter = accountFilter;
+        this.smsDispatcher = smsDispatcher;
+        this.byteTemplate = byteTemplate;
+        this.stringTemplate = stringTemplate;
+        this.roundTrips = registry.summary("auth.token.redis.round-trips");
+        this.binaryToken = "binary".equalsIgnoreCase(tokenFormat);
+        this.leaseTime = leaseTime;
     }
 
     /**
      * 根据用户登录账号获取Account缓存中的用户ID
+     * <p>
+     * 缓存未命中时,同一账号的并发请求共享一次数据库加载,不同账号的加载互不阻塞。
+     * 如启用了加载租约,多个节点对同一账号只有租约持有者访问数据库,其他节点等待其加载结果。
      *
      * @param account 登录账号(账号、手机号、E-mail、openId)
      * @return 用户ID
@@ -84,47 +239,172 @@ public class Core {
             return userId;
         }
 
-        synchronized (this) {
-            userId = Redis.get(account);
-            if (userId != null && !userId.isEmpty()) {
-                return userId;
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> loading = loadings.putIfAbsent(account, future);
+        if (loading != null) {
+            try {
+                return loading.join();
+            } catch (CompletionException ex) {
+                // 抛出加载请求的原始异常,与加载请求本身的异常一致
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+
+                throw ex;
             }
+        }
 
-            User user = mapper.getUser(account);
-            if (user == null) {
-                return null;
+        try {
+            userId = leaseTime > 0 ? loadUserIdWithLease(account) : loadUserId(account);
+            future.complete(userId);
+
+            return userId;
+        } catch (Throwable ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loadings.remove(account, future);
+        }
+    }
+
+    /**
+     * 根据登录账号获取用户ID,登录标识过滤器判定账号不存在时不访问Redis和数据库
+     * <p>
+     * 过滤器可能短暂滞后于其他服务新增的用户,仅用于账号不存在即失败的场景;不存在即自动注册的场景须使用getUserId,以免重复创建用户。
+     *
+     * @param account 登录账号(账号、手机号、E-mail、openId)
+     * @return 用户ID,账号不存在时返回null
+     */
+    public String findUserId(String account) {
+        return accountFilter.mightContain(account) ? getUserId(account) : null;
+    }
+
+    /**
+     * 持有Redis租约时从数据库加载用户,未取得租约时等待租约持有者的加载结果
+     *
+     * @param account 登录账号
+     * @return 用户ID
+     */
+    private String loadUserIdWithLease(String account) {
+        String leaseKey = "Lease:ID:" + account;
+        String owner = LEASE_LOADING + ":" + Util.uuid();
+        Boolean acquired = stringTemplate.opsForValue().setIfAbsent(leaseKey, owner, leaseTime, TimeUnit.MILLISECONDS);
+        if (Boolean.TRUE.equals(acquired)) {
+            String userId;
+            try {
+                userId = loadUserId(account);
+            } catch (RuntimeException ex) {
+                // 加载失败时释放租约,等待中的节点随即自行加载,无需等到租约过期
+                stringTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(leaseKey), owner);
+                throw ex;
             }
 
-            // 缓存用户ID到Redis
-            userId = user.getId();
-            Redis.set("ID:" + user.getAccount(), userId);
+            if (userId == null) {
+                // 标记账号不存在,等待中的节点据此直接返回
+                stringTemplate.opsForValue().set(leaseKey, LEASE_NONE, leaseTime, TimeUnit.MILLISECONDS);
+            }
 
-            String mobile = user.getMobile();
-            if (mobile != null && !mobile.isEmpty()) {
-                Redis.set("ID:" + mobile, userId);
+            return userId;
+        }
+
+        List<String> keys = Arrays.asList("ID:" + account, leaseKey);
+        long deadline = System.currentTimeMillis() + leaseTime;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LEASE_POLL_INTERVAL);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
             }
 
-            String mail = user.getEmail();
-            if (mail != null && !mail.isEmpty()) {
-                Redis.set("ID:" + mail, userId);
+            List<String> values = stringTemplate.opsForValue().multiGet(keys);
+            String userId = values == null ? null : values.get(0);
+            if (userId != null && !userId.isEmpty()) {
+                return userId;
             }
 
-            String unionId = user.getUnionId();
-            if (unionId != null && !unionId.isEmpty()) {
-                Redis.set("ID:" + unionId, userId);
+            String lease = values == null ? null : values.get(1);
+            if (LEASE_NONE.equals(lease)) {
+                return null;
             }
 
-            // 解密用户密码
-            String pw = user.getPassword();
-            String password = pw.length() > 32 ? Encryptor.rsaDecrypt(pw, PRIVATE_KEY) : pw;
-            user.setPassword(password);
+            if (lease == null) {
+                break;
+            }
+        }
 
-            String key = "User:" + userId;
-            Redis.set(key, Json.toStringValueMap(user));
-            Redis.set(key, "FailureCount", 0);
+        // 租约持有者未能完成加载,由本节点自行加载
+        return loadUserId(account);
+    }
 
+    /**
+     * 从数据库加载用户数据并缓存
+     *
+     * @param account 登录账号
+     * @return 用户ID
+     */
+    private String loadUserId(String account) {
+        String userId = Redis.get("ID:" + account);
+        if (userId != null && !userId.isEmpty()) {
             return userId;
         }
+
+        User user = mapper.getUser(keyType(account), account);
+        if (user == null) {
+            return null;
+        }
+
+        // 解密用户密码
+        String pw = user.getPassword();
+        String password = pw.length() > 32 ? Encryptor.rsaDecrypt(pw, PRIVATE_KEY) : pw;
+        user.setPassword(password);
+
+        // 先缓存用户数据,再缓存用户ID,以免其他请求读到ID后读不到用户数据
+        userId = user.getId();
+        String key = "User:" + userId;
+        Redis.set(key, Json.toStringValueMap(user));
+        userInfoCache.invalidate(userId);
+
+        Redis.set("ID:" + user.getAccount(), userId);
+        String mobile = user.getMobile();
+        if (mobile != null && !mobile.isEmpty()) {
+            Redis.set("ID:" + mobile, userId);
+        }
+
+        String mail = user.getEmail();
+        if (mail != null && !mail.isEmpty()) {
+            Redis.set("ID:" + mail, userId);
+        }
+
+        String unionId = user.getUnionId();
+        if (unionId != null && !unionId.isEmpty()) {
+            Redis.set("ID:" + unionId, userId);
+        }
+
+        return userId;
+    }
+
+    /**
+     * 判断登录标识的类型,以便只查询对应的索引;无法确定类型时查询全部可能的索引
+     *
+     * @param account 登录标识
+     * @return 标识类型
+     */
+    static int keyType(String account) {
+        if (ID_PATTERN.matcher(account).matches()) {
+            return KEY_ID;
+        }
+
+        if (MOBILE_PATTERN.matcher(account).matches()) {
+            return KEY_MOBILE;
+        }
+
+        return account.indexOf('@') > 0 ? KEY_EMAIL : KEY_OTHER;
     }
 
     /**
@@ -138,7 +418,7 @@ public class Core {
     public String getGeneralCode(String userId, String account, String password) {
         String key = Util.md5(account + password);
 
-        return generateCode(userId, key, GENERAL_CODE_LEFT);
+        return generateCode(userId, key, GENERAL_CODE_LEFT, CHALLENGE_PASSWORD);
     }
 
     /**
@@ -159,49 +439,27 @@ public class Core {
         message.setReceivers(mobile);
         message.setParams(map);
         message.setBroadcast(false);
-        try {
-            Reply reply = client.sendMessage(message);
-            if (!reply.getSuccess()) {
-                return reply.getMessage();
-            }
 
-            String key = Util.md5(mobile + Util.md5(smsCode));
-            logger.info("账户[{}]的验证码为: {}", mobile, smsCode);
-
-            return generateCode(userId, key, SMS_CODE_LEFT);
-        } catch (Exception ex) {
+        // 先生成挑战再异步发送短信,发送结果可按Code查询;队列已满时删除挑战,以免未发出的验证码仍然有效
+        String key = Util.md5(mobile + Util.md5(smsCode));
+        String code = generateCode(userId, key, SMS_CODE_LEFT, CHALLENGE_SMS);
+        if (!smsDispatcher.submit(code, message, SMS_CODE_LEFT)) {
+            Redis.deleteKey("Sign:" + Util.md5(key + code));
             return "发送短信失败,请稍后重试";
         }
+
+        logger.info("账户[{}]的验证码为: {}", mobile, smsCode);
+        return code;
     }
 
     /**
      * 应用是否过期
      *
      * @param login 登录信息
-     * @return 租户ID是否为空
+     * @return 应用是否不存在或租户的应用已过期
      */
-    public boolean appIsExpired(LoginDto login, String userId) {
-        String appId = login.getAppId();
-        String key = "App:" + appId;
-        if (!Redis.hasKey(key)) {
-            Application app = mapper.getApp(appId);
-            Redis.set(key, "PermitLife", app.getPermitLife());
-            Redis.set(key, "TokenLife", app.getTokenLife());
-            Redis.set(key, "SignInType", app.getSigninOne());
-            Redis.set(key, "RefreshType", app.getAutoRefresh());
-
-            mapper.getApps(appId).forEach(i -> Redis.set(key, i.getTenantId(), i.getExpireDate()));
-        }
-
-        String tenantId = login.getTenantId();
-        if (tenantId == null || tenantId.isEmpty()) {
-            return false;
-        }
-
-        String date = Redis.get("App:" + appId, tenantId);
-        LocalDate expire = LocalDate.parse(date);
-
-        return LocalDate.now().isAfter(expire);
+    public boolean appIsExpired(LoginDto login) {
+        return appPolicyCache.isExpired(login.getAppId(), login.getTenantId());
     }
 
     /**
@@ -213,60 +471,64 @@ public class Core {
      * @return 令牌数据包
      */
     public TokenDto creatorToken(String code, LoginDto login, String userId) {
+        RoundTripCounter.reset();
         String fingerprint = login.getFingerprint();
         String appId = login.getAppId();
         String tenantId = login.getTenantId();
 
         // 加载用户授权码
-        List<String> list = mapper.getAuthInfos(appId, tenantId, userId);
-        Token token = new Token(userId, appId, tenantId);
-        token.setPermitFuncs(list);
+        List<String> list = permitCache.get(appId, tenantId, userId);
+        AppPolicy policy = appPolicyCache.get(appId);
+        Token token = new Token(userId, appId, tenantId, policy);
         token.setPermitTime(LocalDateTime.now());
 
-        // 缓存用户Token
-        String key = "UserToken:" + userId;
-        Redis.set(key, appId, code);
+        // 二进制格式的令牌以授权码位图存储,JSON格式保持授权码集合以兼容其他读取方
+        if (binaryToken) {
+            dictionary.encode(token, list);
+        } else {
+            token.setPermitFuncs(list);
+        }
+
+        TokenDto tokenDto = initPackage(token, code, fingerprint, policy, true);
+        recordRoundTrips();
 
-        return initPackage(token, code, fingerprint, appId);
+        return tokenDto;
     }
 
     /**
      * 刷新Secret过期时间
+     * <p>
+     * 以令牌副本生成新的密钥和有效期,缓存中的共享令牌不被修改,并发的读取和刷新不会看到更新了一半的令牌。
      *
-     * @param token       令牌
+     * @param cached      缓存中的令牌
      * @param tokenId     令牌ID
      * @param fingerprint 用户特征串
      * @return 令牌数据包
      */
-    public TokenDto refreshToken(Token token, String tokenId, String fingerprint) {
-        String appId = token.getAppId();
+    public TokenDto refreshToken(Token cached, String tokenId, String fingerprint) {
+        RoundTripCounter.reset();
+        Token token = cached.copy();
         token.setSecretKey(Util.uuid());
 
-        return initPackage(token, tokenId, fingerprint, appId);
+        AppPolicy policy = appPolicyCache.get(token.getAppId());
+        TokenDto tokenDto = initPackage(token, tokenId, fingerprint, policy, false);
+        recordRoundTrips();
+
+        return tokenDto;
     }
 
     /**
-     * 初始化令牌数据包
+     * 初始化令牌数据包,并以一次管道操作写入缓存
      *
      * @param token       令牌数据
      * @param code        Code
      * @param fingerprint 用户特征串
-     * @param appId       应用ID
+     * @param policy      应用策略
+     * @param isNew       是否新令牌(需绑定到用户)
      * @return 令牌数据包
      */
-    private TokenDto initPackage(Token token, String code, String fingerprint, String appId) {
-        // 生成令牌数据
-        AccessToken accessToken = new AccessToken();
-        accessToken.setId(code);
-        accessToken.setSecret(token.getSecretKey());
-
-        AccessToken refreshToken = new AccessToken();
-        refreshToken.setId(code);
-        refreshToken.setSecret(token.getRefreshKey());
-
+    private TokenDto initPackage(Token token, String code, String fingerprint, AppPolicy policy, boolean isNew) {
         TokenDto tokenDto = new TokenDto();
-        tokenDto.setAccessToken(accessToken.toString());
-        tokenDto.setRefreshToken(refreshToken.toString());
 
         // 设置令牌失效时间
         long life = token.getLife();
@@ -283,30 +545,59 @@ public class Core {
         tokenDto.setExpire(life);
         tokenDto.setFailure(failure);
 
+        // 生成令牌数据,应用设置为签名令牌模式时发放签名访问令牌
+        if (policy != null && policy.getTokenMode() == 1 && signer.isEnabled()) {
+            tokenDto.setAccessToken(signer.sign(code, token));
+        } else {
+            AccessToken accessToken = new AccessToken();
+            accessToken.setId(code);
+            accessToken.setSecret(token.getSecretKey());
+            tokenDto.setAccessToken(accessToken.toString());
+        }
+
+        AccessToken refreshToken = new AccessToken();
+        refreshToken.setId(code);
+        refreshToken.setSecret(token.getRefreshKey());
+        tokenDto.setRefreshToken(refreshToken.toString());
+
         // 缓存令牌数据
         String hashKey = tokenDto.getAccessToken() + fingerprint;
         token.setHash(Util.md5(hashKey));
-        Redis.set("Token:" + code, token.toString(), failure + (TIME_OUT * 2000), TimeUnit.MILLISECONDS);
+        byte[] key = ("Token:" + code).getBytes(StandardCharsets.UTF_8);
+        byte[] value = binaryToken ? TokenCodec.encode(token) : token.toString().getBytes(StandardCharsets.UTF_8);
+        Expiration expiration = Expiration.milliseconds(failure + (TIME_OUT * 2000));
+        String message = tokenCache.message(code);
+        tokenCache.put(code, token);
+
+        RoundTripCounter.increment();
+        stringTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            if (isNew) {
+                conn.hSet("UserToken:" + token.getUserId(), token.getAppId(), code);
+            }
 
-        // 构造用户信息
-        String key = "User:" + token.getUserId();
-        Map<Object, Object> user =  Redis.getEntity(key);
-        UserInfoDto info = Json.clone(user, UserInfoDto.class);
-        String host = Redis.get("Config:FileHost");
-        String imgUrl = info.getHeadImg();
-        if (imgUrl == null || imgUrl.isEmpty()) {
-            String defaultHead = Redis.get("Config:DefaultHead");
-            info.setHeadImg(host + defaultHead);
-        } else if (!imgUrl.contains("http://") && !imgUrl.contains("https://")) {
-            info.setHeadImg(host + imgUrl);
-        }
+            conn.set(key, value, expiration, RedisStringCommands.SetOption.UPSERT);
+            conn.publish(TokenCache.CHANNEL, message);
 
-        info.setTenantId(token.getTenantId());
-        tokenDto.setUserInfo(info);
+            return null;
+        });
+
+        // 构造用户信息
+        UserInfoDto info = userInfoCache.get(token.getUserId());
+        tokenDto.setUserInfo(UserInfoCache.copy(info, token.getTenantId()));
 
         return tokenDto;
     }
 
+    /**
+     * 记录本次令牌发放/刷新的Redis往返次数
+     */
+    private void recordRoundTrips() {
+        int count = RoundTripCounter.get();
+        roundTrips.record(count);
+        logger.debug("令牌数据包Redis往返次数: {}", count);
+    }
+
     /**
      * 获取缓存中的令牌数据
      *
@@ -314,13 +605,61 @@ public class Core {
      * @return 缓存中的令牌
      */
     public Token getToken(String tokenId) {
-        String key = "Token:" + tokenId;
-        String json = Redis.get(key);
-        if (json == null || json.isEmpty()) {
+        Token token = tokenCache.get(tokenId);
+        if (token != null) {
+            return token;
+        }
+
+        // 兼容二进制格式和JSON格式的缓存数据
+        byte[] data = byteTemplate.opsForValue().get("Token:" + tokenId);
+        token = TokenCodec.decode(data);
+        if (token == null) {
             return null;
         }
 
-        return Json.toBean(json, Token.class);
+        tokenCache.put(tokenId, token);
+
+        return token;
+    }
+
+    /**
+     * 批量获取令牌数据,进程内缓存未命中的以一次MGET读取
+     *
+     * @param tokenIds 令牌ID集合(不重复)
+     * @return 令牌ID与令牌的映射,不存在的令牌不包含在内
+     */
+    public Map<String, Token> getTokens(List<String> tokenIds) {
+        Map<String, Token> tokens = new HashMap<>(tokenIds.size() * 2);
+        List<String> misses = new ArrayList<>();
+        for (String tokenId : tokenIds) {
+            Token token = tokenCache.get(tokenId);
+            if (token == null) {
+                misses.add(tokenId);
+            } else {
+                tokens.put(tokenId, token);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return tokens;
+        }
+
+        List<String> keys = new ArrayList<>(misses.size());
+        misses.forEach(i -> keys.add("Token:" + i));
+        List<byte[]> values = byteTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return tokens;
+        }
+
+        for (int i = 0; i < misses.size(); i++) {
+            Token token = TokenCodec.decode(values.get(i));
+            if (token != null) {
+                tokenCache.put(misses.get(i), token);
+                tokens.put(misses.get(i), token);
+            }
+        }
+
+        return tokens;
     }
 
     /**
@@ -330,92 +669,167 @@ public class Core {
      */
     public void deleteToken(String tokenId) {
         String key = "Token:" + tokenId;
-        if (!Redis.hasKey(key)) {
-            return;
+        if (Redis.hasKey(key)) {
+            Redis.deleteKey(key);
         }
 
-        Redis.deleteKey(key);
+        tokenCache.invalidate(tokenId);
     }
 
     /**
-     * 生成Code,缓存后返回
+     * 以最新的授权码更新用户在线令牌中的授权数据,令牌的剩余有效时间不变
      *
-     * @param userId  用户ID
-     * @param key     密钥
-     * @param seconds 缓存有效时间(秒)
-     * @return Code
+     * @param userId 用户ID
+     * @param appId  应用ID,为空时更新该用户全部应用的令牌
+     * @return 更新的令牌数
      */
-    private String generateCode(String userId, String key, int seconds) {
-        String code = Util.uuid();
-        String signature = Util.md5(key + code);
-
-        // 用签名作为Key缓存Code
-        Redis.set("Sign:" + signature, code, seconds, TimeUnit.SECONDS);
+    public int refreshPermits(String userId, String appId) {
+        Map<Object, Object> tokens = stringTemplate.opsForHash().entries("UserToken:" + userId);
+        int count = 0;
+        for (Map.Entry<Object, Object> entry : tokens.entrySet()) {
+            if (appId != null && !appId.equals(entry.getKey())) {
+                continue;
+            }
 
-        // 用Code作为Key缓存用户ID
-        Redis.set("Code:" + code, userId, seconds + 1, TimeUnit.SECONDS);
+            if (refreshTokenPermits((String) entry.getValue())) {
+                count++;
+            }
+        }
 
-        return code;
+        return count;
     }
 
     /**
-     * 通过签名获取Code
+     * 读取令牌中的授权码:在应用的授权码有效期(PermitLife)内直接返回;超过有效期时仍返回令牌中的授权码,
+     * 同时在后台更新令牌的授权码(同一令牌同时只有一个更新任务)
      *
-     * @param sign 签名
-     * @return 签名对应的Code
+     * @param tokenId 令牌ID
+     * @param token   令牌
+     * @return 授权码集合,令牌中没有授权码时返回null
      */
-    public String getCode(String sign) {
-        String key = "Sign:" + sign;
-        String code = Redis.get(key);
-        if (code == null || code.isEmpty()) {
+    public List<String> getPermits(String tokenId, Token token) {
+        List<String> list = dictionary.decode(token);
+        if (list == null) {
             return null;
         }
 
-        Redis.deleteKey(key);
-        return code;
+        refreshIfStale(tokenId, token);
+        return list;
     }
 
     /**
-     * 通过Code获取用户ID
+     * 令牌是否拥有指定授权码:以位图判断,无需解码全部授权码;超过授权码有效期时同样在后台更新令牌的授权码
      *
-     * @param code Code
-     * @return Code对应的用户ID
+     * @param tokenId 令牌ID
+     * @param token   令牌
+     * @param code    授权码
+     * @return 是否拥有授权码,令牌中没有授权码时返回null
      */
-    public String getId(String code) {
-        String key = "Code:" + code;
-        String id = Redis.get(key);
-        if (id == null || id.isEmpty()) {
+    public Boolean hasPermit(String tokenId, Token token, String code) {
+        if (token.getPermitBitmap() == null && token.getPermitFuncs() == null) {
             return null;
         }
 
-        Redis.deleteKey(key);
-        return id;
+        refreshIfStale(tokenId, token);
+        return dictionary.hasPermit(token, code);
     }
 
     /**
-     * 用户是否失效状态
+     * 超过授权码有效期(PermitLife)时在后台更新令牌的授权码(同一令牌同时只有一个更新任务)
      *
-     * @return 用户是否失效状态
+     * @param tokenId 令牌ID
+     * @param token   令牌
      */
-    public int getFailureCount(String userId) {
-        String key = "User:" + userId;
-        String value = Redis.get(key, "LastFailureTime");
-        if (value == null || value.isEmpty()) {
-            return 0;
+    private void refreshIfStale(String tokenId, Token token) {
+        LocalDateTime permitTime = token.getPermitTime();
+        Long permitLife = token.getPermitLife();
+        boolean fresh = permitTime != null && permitLife != null && permitTime.plusNanos(permitLife * 1000000).isAfter(LocalDateTime.now());
+        if (!fresh && refreshings.add(tokenId)) {
+            try {
+                permitRefresher.execute(() -> {
+                    try {
+                        refreshTokenPermits(tokenId);
+                    } catch (Exception ex) {
+                        logger.error("更新令牌[{}]的授权码失败", tokenId, ex);
+                    } finally {
+                        refreshings.remove(tokenId);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                refreshings.remove(tokenId);
+            }
         }
+    }
 
-        LocalDateTime lastFailureTime = LocalDateTime.parse(value, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        LocalDateTime resetTime = lastFailureTime.plusMinutes(10);
-        LocalDateTime now = LocalDateTime.now();
+    /**
+     * 停止授权码更新线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        permitRefresher.shutdownNow();
+    }
+
+    /**
+     * 以最新的授权码更新令牌,令牌的剩余有效时间不变
+     * <p>
+     * 以脚本比较并替换令牌数据:读取后令牌已被刷新或删除时放弃本次写入并重新读取,不会以旧数据覆盖新的密钥和有效期。
+     *
+     * @param tokenId 令牌ID
+     * @return 是否已更新(令牌不存在或已过期时不更新)
+     */
+    private boolean refreshTokenPermits(String tokenId) {
+        String key = "Token:" + tokenId;
+        List<String> keys = Collections.singletonList(key);
+        for (int i = 0; i < PERMIT_REFRESH_ATTEMPTS; i++) {
+            byte[] data = byteTemplate.opsForValue().get(key);
+            Token token = TokenCodec.decode(data);
+            if (token == null) {
+                return false;
+            }
+
+            List<String> list = permitCache.get(token.getAppId(), token.getTenantId(), token.getUserId());
+            if (binaryToken) {
+                dictionary.encode(token, list);
+            } else {
+                token.setPermitBitmap(null);
+                token.setPermitVersion(null);
+                token.setPermitFuncs(list);
+            }
 
-        int failureCount = Integer.parseInt(Redis.get(key, "FailureCount"));
-        if (failureCount > 0 && now.isAfter(resetTime)) {
-            failureCount = 0;
-            Redis.set(key, "FailureCount", 0);
-            Redis.set(key, "LastFailureTime", DateHelper.getDateTime());
+            token.setPermitTime(LocalDateTime.now());
+            byte[] value = binaryToken ? TokenCodec.encode(token) : token.toString().getBytes(StandardCharsets.UTF_8);
+            Long result = byteTemplate.execute(REPLACE_SCRIPT, keys, data, value);
+            if (result != null && result == 1) {
+                tokenCache.invalidate(tokenId);
+                return true;
+            }
+
+            if (result == null || result < 0) {
+                return false;
+            }
         }
 
-        return failureCount;
+        logger.warn("令牌[{}]更新频繁,未能更新授权码", tokenId);
+        return false;
+    }
+
+    /**
+     * 生成Code,缓存后返回
+     * <p>
+     * 以签名为Key缓存一条挑战记录,值为"Code|用户ID|挑战类型",登录时由LoginVerifier原子地读取并删除。
+     *
+     * @param userId  用户ID
+     * @param key     密钥
+     * @param seconds 缓存有效时间(秒)
+     * @param type    挑战类型
+     * @return Code
+     */
+    private String generateCode(String userId, String key, int seconds, int type) {
+        String code = Util.uuid();
+        String signature = Util.md5(key + code);
+        Redis.set("Sign:" + signature, code + "|" + userId + "|" + type, seconds, TimeUnit.SECONDS);
+
+        return code;
     }
 
     /**
@@ -457,16 +871,33 @@ public class Core {
 
         Redis.set("User:" + userId, "unionId", unionId);
         Redis.set("ID:" + unionId, userId);
+        userInfoCache.invalidate(userId);
+        accountFilter.put(unionId);
+    }
+
+    /**
+     * 获取验证码短信的发送状态
+     *
+     * @param code 获取验证码时返回的Code
+     * @return 状态及失败原因(pending/sent/failed|原因),不存在时返回null
+     */
+    public String getSmsStatus(String code) {
+        return smsDispatcher.getStatus(code);
     }
 
     /**
      * 验证短信验证码
      *
      * @param verifyKey 验证参数
-     * @return Reply
+     * @return Reply,消息中心不可用时返回null
      */
     public Reply verifySmsCode(String verifyKey) {
-        return client.verifySmsCode(verifyKey);
+        try {
+            return client.verifySmsCode(verifyKey);
+        } catch (Exception ex) {
+            logger.warn("验证短信验证码失败: {}", ex.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -497,9 +928,11 @@ public class Core {
             Redis.set("ID:" + unionId, userId);
         }
 
+        accountFilter.put(userId, mobile, unionId);
+
         String key = "User:" + userId;
         Redis.set(key, Json.toStringValueMap(user));
-        Redis.set(key, "FailureCount", 0);
+        userInfoCache.invalidate(userId);
 
         RabbitClient.sendTopic(user);
         return userId;
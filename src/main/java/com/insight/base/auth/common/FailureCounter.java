@@ -0,0 +1,162 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.cache.CacheChannel;
+import com.insight.base.auth.common.cache.LocalCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/31
+ * @remark 登录失败计数器
+ * <p>
+ * 以Redis有序集合(Failure:{用户ID})记录时间窗口内的每次失败,一个Lua脚本原子地清除过期记录、记录本次失败并计数,
+ * 达到次数上限时写入锁定标记(Lockout:{用户ID})并清除失败记录,并发的错误尝试不会丢失计数。
+ * 锁定状态在进程内缓存至锁定结束,锁定期间的请求无需访问Redis即可拒绝;提前解锁时通过缓存通知通道使各节点的进程内锁定状态失效。
+ */
+@Component
+public class FailureCounter {
+    private static final String CHANNEL = "Channel:Lockout";
+    private static final String SCRIPT_TEXT =
+            "local lockout = redis.call('PTTL', KEYS[2])\n" +
+            "if lockout > 0 then return {-1, lockout} end\n" +
+            "local now = tonumber(ARGV[1])\n" +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - tonumber(ARGV[2]))\n" +
+            "redis.call('ZADD', KEYS[1], now, ARGV[4])\n" +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2])\n" +
+            "local count = redis.call('ZCARD', KEYS[1])\n" +
+            "if count < tonumber(ARGV[3]) then return {count, 0} end\n" +
+            "redis.call('SET', KEYS[2], count, 'PX', ARGV[5])\n" +
+            "redis.call('DEL', KEYS[1])\n" +
+            "return {count, tonumber(ARGV[5])}";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT = new DefaultRedisScript<>(SCRIPT_TEXT, List.class);
+    private final StringRedisTemplate template;
+    private final CacheChannel channel;
+
+    /**
+     * 已锁定的用户及其锁定结束时间
+     */
+    private final LocalCache<Long> lockouts;
+
+    /**
+     * 失败次数上限
+     */
+    private final int limit;
+
+    /**
+     * 计数时间窗口(毫秒)
+     */
+    private final long window;
+
+    /**
+     * 锁定时间(毫秒)
+     */
+    private final long lockTime;
+
+    /**
+     * 账号锁定提示
+     */
+    private final String lockedMessage;
+
+    /**
+     * 构造方法
+     *
+     * @param template StringRedisTemplate
+     * @param channel  CacheChannel
+     * @param limit    失败次数上限
+     * @param window   计数时间窗口(毫秒)
+     * @param lockTime 锁定时间(毫秒)
+     */
+    public FailureCounter(StringRedisTemplate template, CacheChannel channel,
+                          @Value("${insight.auth.failure.limit:6}") int limit,
+                          @Value("${insight.auth.failure.window:600000}") long window,
+                          @Value("${insight.auth.failure.lock-time:600000}") long lockTime) {
+        this.template = template;
+        this.channel = channel;
+        this.limit = limit;
+        this.window = window;
+        this.lockTime = lockTime;
+        this.lockouts = new LocalCache<>(100000, lockTime);
+        this.lockedMessage = "错误次数过多,账号已被锁定!请于" + (lockTime + 59999) / 60000 + "分钟后再试";
+
+        channel.subscribe(CHANNEL, lockouts::remove);
+    }
+
+    /**
+     * 获取账号锁定提示
+     *
+     * @return 按配置的锁定时间生成的提示
+     */
+    public String getLockedMessage() {
+        return lockedMessage;
+    }
+
+    /**
+     * 用户是否处于锁定状态,进程内缓存未命中时查询Redis
+     *
+     * @param userId 用户ID
+     * @return 是否锁定
+     */
+    public boolean isLocked(String userId) {
+        if (lockouts.get(userId) != null) {
+            return true;
+        }
+
+        Long ttl = template.getExpire("Lockout:" + userId, TimeUnit.MILLISECONDS);
+        if (ttl == null || ttl <= 0) {
+            return false;
+        }
+
+        long deadline = System.currentTimeMillis() + ttl;
+        lockouts.put(userId, deadline, deadline);
+        return true;
+    }
+
+    /**
+     * 记录一次登录失败
+     *
+     * @param userId 用户ID
+     * @return 是否已锁定(含本次失败导致的锁定)
+     */
+    @SuppressWarnings("unchecked")
+    public boolean record(String userId) {
+        if (lockouts.get(userId) != null) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        List<String> keys = Arrays.asList("Failure:" + userId, "Lockout:" + userId);
+        String member = now + ":" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        List<Long> values = template.execute(SCRIPT, keys, String.valueOf(now), String.valueOf(window), String.valueOf(limit),
+                member, String.valueOf(lockTime));
+        if (values == null || values.size() < 2 || values.get(1) <= 0) {
+            return false;
+        }
+
+        lockouts.put(userId, now + values.get(1), now + values.get(1));
+        return true;
+    }
+
+    /**
+     * 解除用户锁定并清除失败记录,同时使全部节点的进程内锁定状态失效
+     * <p>
+     * 其他服务直接删除Redis中的锁定标记时,须向Channel:Lockout发布用户ID。
+     *
+     * @param userId 用户ID
+     */
+    public void unlock(String userId) {
+        template.delete(Arrays.asList("Failure:" + userId, "Lockout:" + userId));
+        lockouts.remove(userId);
+        channel.publish(CHANNEL, userId);
+    }
+}
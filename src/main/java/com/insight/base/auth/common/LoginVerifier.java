@@ -0,0 +1,117 @@
+package com.insight.base.auth.common;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/11
+ * @remark 登录验证组件
+ * <p>
+ * 以一个Lua脚本原子地完成:消费挑战记录(Sign:{签名} = Code|用户ID|挑战类型)、验证用户状态,
+ * 一次网络往返,同一签名不会因并发请求被重复使用。应用有效期由AppPolicy在内存中验证。
+ */
+@Component
+public class LoginVerifier {
+    private static final String SCRIPT_TEXT =
+            "local challenge = redis.call('GET', KEYS[1])\n" +
+            "if not challenge then return {'INVALID_SIGN'} end\n" +
+            "redis.call('DEL', KEYS[1])\n" +
+            "local code, userId = string.match(challenge, '^([^|]+)|([^|]*)')\n" +
+            "if not code or userId == '' then return {'INVALID_CODE', code} end\n" +
+            "local invalid = redis.call('HGET', 'User:' .. userId, 'invalid')\n" +
+            "if invalid and string.lower(invalid) == 'true' then return {'USER_INVALID', code, userId} end\n" +
+            "return {'SUCCESS', code, userId}";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT = new DefaultRedisScript<>(SCRIPT_TEXT, List.class);
+    private final StringRedisTemplate template;
+
+    /**
+     * 构造方法
+     *
+     * @param template StringRedisTemplate
+     */
+    public LoginVerifier(StringRedisTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * 验证登录签名
+     *
+     * @param signature 签名
+     * @return 验证结果
+     */
+    @SuppressWarnings("unchecked")
+    public Result verify(String signature) {
+        List<String> keys = Collections.singletonList("Sign:" + signature);
+        List<String> values = template.execute(SCRIPT, keys);
+        if (values == null || values.isEmpty()) {
+            return new Result(Status.INVALID_SIGN, null, null);
+        }
+
+        Status status = Status.valueOf(values.get(0));
+        String code = values.size() > 1 ? values.get(1) : null;
+        String userId = values.size() > 2 ? values.get(2) : null;
+
+        return new Result(status, code, userId);
+    }
+
+    /**
+     * 验证结果状态
+     */
+    public enum Status {
+
+        /**
+         * 验证通过
+         */
+        SUCCESS,
+
+        /**
+         * 签名不存在或已被使用
+         */
+        INVALID_SIGN,
+
+        /**
+         * 挑战记录数据不完整
+         */
+        INVALID_CODE,
+
+        /**
+         * 用户已失效
+         */
+        USER_INVALID
+    }
+
+    /**
+     * 验证结果
+     */
+    public static class Result {
+        private final Status status;
+        private final String code;
+        private final String userId;
+
+        Result(Status status, String code, String userId) {
+            this.status = status;
+            this.code = code;
+            this.userId = userId;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.insight.base.auth.common;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/20
+ * @remark 授权码位图(不可变,Roaring结构)
+ * <p>
+ * 以整数的高16位分桶,每个桶按元素数量选择有序数组(不超过4096个元素)或1024个long的位图存储。
+ * 授权码通过应用的授权码字典映射为整数,权限检查即为位测试。
+ */
+public final class PermitBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+
+    /**
+     * 桶的键(高16位,升序)
+     */
+    private final char[] keys;
+
+    /**
+     * 与键对应的桶: char[](有序数组)或long[](位图)
+     */
+    private final Object[] containers;
+
+    private PermitBitmap(char[] keys, Object[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+    }
+
+    /**
+     * 由整数集合构造位图
+     *
+     * @param values 非负整数集合(可无序、可重复)
+     * @return 位图
+     */
+    public static PermitBitmap of(int[] values) {
+        int[] sorted = Arrays.stream(values).filter(i -> i >= 0).sorted().distinct().toArray();
+        char[] keys = new char[sorted.length];
+        Object[] containers = new Object[sorted.length];
+        int count = 0;
+        int start = 0;
+        while (start < sorted.length) {
+            int high = sorted[start] >>> 16;
+            int end = start;
+            while (end < sorted.length && sorted[end] >>> 16 == high) {
+                end++;
+            }
+
+            keys[count] = (char) high;
+            containers[count] = container(sorted, start, end);
+            count++;
+            start = end;
+        }
+
+        return new PermitBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count));
+    }
+
+    /**
+     * 是否包含指定整数
+     *
+     * @param value 整数
+     * @return 是否包含
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+
+        int index = Arrays.binarySearch(keys, (char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+
+        char low = (char) value;
+        Object container = containers[index];
+        if (container instanceof long[]) {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+
+        return Arrays.binarySearch((char[]) container, low) >= 0;
+    }
+
+    /**
+     * 元素数量
+     *
+     * @return 元素数量
+     */
+    public int cardinality() {
+        int count = 0;
+        for (Object container : containers) {
+            if (container instanceof long[]) {
+                for (long word : (long[]) container) {
+                    count += Long.bitCount(word);
+                }
+            } else {
+                count += ((char[]) container).length;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * 转换为升序整数数组
+     *
+     * @return 整数数组
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int high = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof long[]) {
+                long[] words = (long[]) container;
+                for (int w = 0; w < words.length; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        values[count++] = high | (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for (char low : (char[]) container) {
+                    values[count++] = high | low;
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * 序列化: 桶数量 + (键 + 类型 + 数据)*
+     *
+     * @return 二进制数据
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeShort(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeChar(keys[i]);
+                Object container = containers[i];
+                if (container instanceof long[]) {
+                    out.writeByte(BITMAP);
+                    for (long word : (long[]) container) {
+                        out.writeLong(word);
+                    }
+                } else {
+                    char[] array = (char[]) container;
+                    out.writeByte(ARRAY);
+                    out.writeShort(array.length);
+                    for (char low : array) {
+                        out.writeChar(low);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("授权码位图编码失败", ex);
+        }
+
+        return stream.toByteArray();
+    }
+
+    /**
+     * 反序列化
+     *
+     * @param data 二进制数据
+     * @return 位图,数据为空时返回null
+     */
+    public static PermitBitmap fromBytes(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int count = in.readUnsignedShort();
+            char[] keys = new char[count];
+            Object[] containers = new Object[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.readChar();
+                byte type = in.readByte();
+                if (type == BITMAP) {
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] = in.readLong();
+                    }
+
+                    containers[i] = words;
+                } else if (type == ARRAY) {
+                    char[] array = new char[in.readUnsignedShort()];
+                    for (int j = 0; j < array.length; j++) {
+                        array[j] = in.readChar();
+                    }
+
+                    containers[i] = array;
+                } else {
+                    throw new IOException("未知的容器类型: " + type);
+                }
+            }
+
+            return new PermitBitmap(keys, containers);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("授权码位图数据无效", ex);
+        }
+    }
+
+    /**
+     * 构造桶
+     *
+     * @param sorted 升序整数数组
+     * @param start  起始位置
+     * @param end    结束位置(不含)
+     * @return char[]或long[]
+     */
+    private static Object container(int[] sorted, int start, int end) {
+        int size = end - start;
+        if (size <= ARRAY_MAX) {
+            char[] array = new char[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = (char) sorted[start + i];
+            }
+
+            return array;
+        }
+
+        long[] words = new long[BITMAP_WORDS];
+        for (int i = start; i < end; i++) {
+            char low = (char) sorted[i];
+            words[low >>> 6] |= 1L << low;
+        }
+
+        return words;
+    }
+}
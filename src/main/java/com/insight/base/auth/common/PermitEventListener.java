@@ -0,0 +1,225 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.cache.AuthGraphCache;
+import com.insight.base.auth.common.cache.PermitCache;
+import com.insight.base.auth.common.dto.PermitEvent;
+import com.insight.base.auth.common.mapper.AuthMapper;
+import com.insight.base.auth.manage.ManageService;
+import com.insight.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/27
+ * @remark 权限变更事件监听器
+ * <p>
+ * 按事件计算受影响的应用和用户,成员关系变更时先更新用户角色表,再仅重建该应用的授权图、使这些用户的角色成员关系和授权码缓存失效,
+ * 并以最新授权码更新其在线令牌,不再依赖缓存过期后集中重新加载。
+ * 处理失败时在本节点有限次重试,仍失败则拒绝消息,由死信交换机转入死信队列(insight.auth.permit.dlq)留待排查和重放。
+ */
+@Component
+public class PermitEventListener {
+    public static final String QUEUE = "insight.auth.permit";
+    public static final String DEAD_LETTER_QUEUE = QUEUE + ".dlq";
+
+    /**
+     * 处理失败时的最大尝试次数及重试间隔(毫秒)
+     */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_INTERVAL = 1000;
+    private static final int MEMBER_USER = 1;
+    private static final int MEMBER_GROUP = 2;
+    private static final int MEMBER_POST = 3;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final AuthMapper mapper;
+    private final AuthGraphCache graphCache;
+    private final PermitCache permitCache;
+    private final ManageService manageService;
+    private final UserRoleSync userRoleSync;
+    private final Core core;
+
+    /**
+     * 构造方法
+     *
+     * @param mapper        AuthMapper
+     * @param graphCache    AuthGraphCache
+     * @param permitCache   PermitCache
+     * @param manageService ManageService
+     * @param userRoleSync  UserRoleSync
+     * @param core          Core
+     */
+    public PermitEventListener(AuthMapper mapper, AuthGraphCache graphCache, PermitCache permitCache, ManageService manageService,
+                               UserRoleSync userRoleSync, Core core) {
+        this.mapper = mapper;
+        this.graphCache = graphCache;
+        this.permitCache = permitCache;
+        this.manageService = manageService;
+        this.userRoleSync = userRoleSync;
+        this.core = core;
+    }
+
+    /**
+     * 接收权限变更事件,处理失败时重试,仍失败则转入死信队列,不丢失失效通知
+     *
+     * @param message 消息
+     */
+    @RabbitListener(queues = QUEUE)
+    public void receive(Message message) {
+        String routingKey = message.getMessageProperties().getReceivedRoutingKey();
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        PermitEvent event;
+        try {
+            event = Json.toBean(body, PermitEvent.class);
+        } catch (Exception ex) {
+            event = null;
+        }
+
+        String[] parts = routingKey == null ? new String[0] : routingKey.split("\\.");
+        if (event == null || parts.length < 2) {
+            logger.warn("无法解析的权限变更事件: {} {}", routingKey, body);
+            throw new AmqpRejectAndDontRequeueException("无法解析的权限变更事件");
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                handle(parts[1], event);
+                return;
+            } catch (Exception ex) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    logger.error("处理权限变更事件[{}]失败,已转入死信队列: {}", routingKey, body, ex);
+                    throw new AmqpRejectAndDontRequeueException("处理权限变更事件失败", ex);
+                }
+
+                logger.warn("处理权限变更事件[{}]失败,第{}次重试: {}", routingKey, attempt, ex.getMessage());
+                try {
+                    Thread.sleep(RETRY_INTERVAL * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AmqpRejectAndDontRequeueException("处理权限变更事件被中断", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按事件类型处理
+     *
+     * @param type  事件类型(路由键第二段)
+     * @param event 权限变更事件
+     */
+    private void handle(String type, PermitEvent event) {
+        switch (type) {
+            case "role":
+            case "rolePermit":
+                // 角色或其权限变更:重建角色所属应用的授权图,授权码缓存随图版本失效
+                String roleAppId = appOfRole(event);
+                if (roleAppId == null) {
+                    graphCache.reloadAll();
+                } else {
+                    graphCache.reload(roleAppId);
+                }
+
+                Set<String> roleUsers = new HashSet<>(mapper.getRoleUserIds(event.getRoleId()));
+                roleUsers.addAll(expand(event.getMemberType(), event.getMemberIds()));
+                if ("role".equals(type)) {
+                    // 角色删除或租户变更:重新展开该角色的用户角色记录,变更前后的成员均受影响
+                    userRoleSync.syncRole(event.getRoleId());
+                    roleUsers.addAll(mapper.getRoleUserIds(event.getRoleId()));
+                    roleUsers.forEach(this::invalidateUser);
+                }
+
+                refresh(roleUsers, roleAppId);
+                break;
+            case "roleMember":
+                // 角色成员变更:仅影响成员展开后的用户在角色所属应用的权限
+                Set<String> members = expand(event.getMemberType(), event.getMemberIds());
+                userRoleSync.syncUsers(members);
+                members.forEach(this::invalidateUser);
+                refresh(members, appOfRole(event));
+                break;
+            case "groupMember":
+            case "postMember":
+                // 用户组或职位成员变更:其角色可能属于多个应用
+                Set<String> users = expand(MEMBER_USER, event.getMemberIds());
+                userRoleSync.syncUsers(users);
+                users.forEach(this::invalidateUser);
+                refresh(users, null);
+                break;
+            case "function":
+                // 功能变更:同步功能授权码后重建功能所属应用的授权图
+                manageService.syncAuthCodes(event.getFunctionId());
+                String funcAppId = event.getAppId() == null ? mapper.getFunctionAppId(event.getFunctionId()) : event.getAppId();
+                refresh(new HashSet<>(mapper.getFunctionUserIds(event.getFunctionId())), funcAppId);
+                break;
+            default:
+                logger.warn("未知的权限变更事件类型: {}", type);
+        }
+    }
+
+    /**
+     * 获取事件中角色所属的应用ID
+     *
+     * @param event 权限变更事件
+     * @return 应用ID,角色已删除且事件未携带应用ID时返回null
+     */
+    private String appOfRole(PermitEvent event) {
+        return event.getAppId() == null ? mapper.getRoleAppId(event.getRoleId()) : event.getAppId();
+    }
+
+    /**
+     * 将角色成员展开为用户ID
+     *
+     * @param type      成员类型
+     * @param memberIds 成员ID集合
+     * @return 用户ID集合
+     */
+    private Set<String> expand(Integer type, List<String> memberIds) {
+        if (type == null || memberIds == null || memberIds.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        switch (type) {
+            case MEMBER_USER:
+                return new HashSet<>(memberIds);
+            case MEMBER_GROUP:
+                return new HashSet<>(mapper.getGroupUserIds(memberIds));
+            case MEMBER_POST:
+                return new HashSet<>(mapper.getPostUserIds(memberIds));
+            default:
+                return new HashSet<>();
+        }
+    }
+
+    /**
+     * 使用户的角色成员关系及授权码缓存失效
+     *
+     * @param userId 用户ID
+     */
+    private void invalidateUser(String userId) {
+        graphCache.invalidateUser(userId);
+        permitCache.invalidate(userId);
+    }
+
+    /**
+     * 更新用户在线令牌的授权码
+     *
+     * @param userIds 用户ID集合
+     * @param appId   应用ID,为空时更新全部应用的令牌
+     */
+    private void refresh(Set<String> userIds, String appId) {
+        int count = 0;
+        for (String userId : userIds) {
+            count += core.refreshPermits(userId, appId);
+        }
+
+        logger.info("权限变更影响{}个用户,已更新{}个在线令牌", userIds.size(), count);
+    }
+}
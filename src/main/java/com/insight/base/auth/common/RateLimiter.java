@@ -0,0 +1,289 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.cache.CacheChannel;
+import com.insight.base.auth.common.cache.LocalCache;
+import com.insight.base.auth.common.dto.LimitResult;
+import com.insight.base.auth.common.entity.InterfaceConfig;
+import com.insight.base.auth.common.mapper.ConfigMapper;
+import com.insight.utils.Util;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/1
+ * @remark 接口限流器
+ * <p>
+ * 按接口配置的最小间隔(limitGap)和周期限额(limitCycle/limitMax)以GCRA算法限流:每个限额在Redis中只保存理论到达时间(TAT),
+ * 一个Lua脚本原子地检查并更新全部限额,每次判定只需一次网络往返。
+ * 被拒绝的调用方在进程内缓存至可再次调用的时间,期间的请求无需访问Redis;
+ * 限额速率较高且无最小间隔的接口每次向Redis预取一批许可,在进程内短时消费,以减少高频调用的Redis访问;
+ * 预取数量不超过限额在许可有效时间内允许的调用次数,过期作废的许可不会明显占用低频调用方的限额。
+ * 接口配置常驻内存,重新加载接口配置时递增版本(Version:Interface)并通知各节点(Channel:Interface)。
+ * Redis不可用时按配置放行(fail-open,默认)或拒绝(fail-closed)全部受限接口的调用。
+ */
+@Component
+public class RateLimiter {
+    private static final String CHANNEL = "Channel:Interface";
+    private static final String VERSION_KEY = "Version:Interface";
+    private static final String DEFAULT_MESSAGE = "调用过于频繁,请稍后再试";
+    private static final String SCRIPT_TEXT =
+            "local now = tonumber(ARGV[1])\n" +
+            "local grant = tonumber(ARGV[2])\n" +
+            "local wait = 0\n" +
+            "local tats = {}\n" +
+            "for i = 1, #KEYS do\n" +
+            "  local t = tonumber(ARGV[i * 2 + 1])\n" +
+            "  local period = tonumber(ARGV[i * 2 + 2])\n" +
+            "  local tat = math.max(tonumber(redis.call('GET', KEYS[i]) or now), now)\n" +
+            "  local available = math.floor((now + period - tat) / t + 0.000001)\n" +
+            "  if available < 1 then wait = math.max(wait, tat + t - period - now) end\n" +
+            "  grant = math.min(grant, available)\n" +
+            "  tats[i] = tat\n" +
+            "end\n" +
+            "if grant < 1 then return {0, math.ceil(wait)} end\n" +
+            "for i = 1, #KEYS do\n" +
+            "  local tat = tats[i] + grant * tonumber(ARGV[i * 2 + 1])\n" +
+            "  redis.call('SET', KEYS[i], string.format('%.3f', tat), 'PX', math.ceil(tat - now))\n" +
+            "end\n" +
+            "return {grant, 0}";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT = new DefaultRedisScript<>(SCRIPT_TEXT, List.class);
+
+    /**
+     * 预取许可的数量为许可有效时间内限额允许的调用次数,最多100个;不足2个时不预取
+     */
+    private static final int LEASE_MIN = 2;
+    private static final int LEASE_MAX = 100;
+
+    /**
+     * 预取许可的有效时间(毫秒),过期未用的许可作废
+     */
+    private static final long LEASE_LIFE = 1000;
+
+    /**
+     * Redis不可用且拒绝调用时建议的重试间隔(毫秒)
+     */
+    private static final long UNAVAILABLE_WAIT = 1000;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final ConfigMapper mapper;
+    private final StringRedisTemplate template;
+    private final CacheChannel channel;
+    private final Counter localDenials;
+    private final Counter remoteDenials;
+    private final Counter errors;
+
+    /**
+     * Redis不可用时是否放行
+     */
+    private final boolean failOpen;
+
+    /**
+     * 被拒绝的调用方及其可再次调用的时间
+     */
+    private final LocalCache<Long> denials = new LocalCache<>(100000, 3600000);
+
+    /**
+     * 调用方预取的许可
+     */
+    private final LocalCache<AtomicInteger> leases = new LocalCache<>(100000, LEASE_LIFE);
+    private volatile Map<String, Limit> limits = new HashMap<>();
+    private volatile long version;
+
+    /**
+     * 构造方法
+     *
+     * @param mapper   ConfigMapper
+     * @param template StringRedisTemplate
+     * @param channel  CacheChannel
+     * @param registry MeterRegistry
+     * @param failOpen Redis不可用时是否放行
+     */
+    public RateLimiter(ConfigMapper mapper, StringRedisTemplate template, CacheChannel channel, MeterRegistry registry,
+                       @Value("${insight.auth.rate-limit.fail-open:true}") boolean failOpen) {
+        this.mapper = mapper;
+        this.template = template;
+        this.channel = channel;
+        this.localDenials = registry.counter("auth.rate-limit.denials", "tier", "local");
+        this.remoteDenials = registry.counter("auth.rate-limit.denials", "tier", "redis");
+        this.errors = registry.counter("auth.rate-limit.errors");
+        this.failOpen = failOpen;
+
+        channel.subscribe(CHANNEL, i -> reload());
+    }
+
+    /**
+     * 获取一次调用许可
+     *
+     * @param method 接口HTTP请求方法
+     * @param url    接口URL
+     * @param key    限流对象(设备指纹或用户ID)
+     * @return 限流结果
+     */
+    @SuppressWarnings("unchecked")
+    public LimitResult acquire(String method, String url, String key) {
+        Limit limit = limits.get(method.toUpperCase() + ":" + url);
+        if (limit == null) {
+            return new LimitResult(true, 0L, null);
+        }
+
+        long now = System.currentTimeMillis();
+        String id = Util.md5(method.toUpperCase() + ":" + url + ":" + key);
+        Long deadline = denials.get(id);
+        if (deadline != null) {
+            localDenials.increment();
+            return new LimitResult(false, Math.max(deadline - now, 1), limit.message);
+        }
+
+        AtomicInteger lease = leases.get(id);
+        if (lease != null && lease.getAndDecrement() > 0) {
+            return new LimitResult(true, 0L, null);
+        }
+
+        List<String> keys = new ArrayList<>(2);
+        List<String> args = new ArrayList<>(6);
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(limit.lease));
+        if (limit.gap > 0) {
+            keys.add("Limit:Gap:" + id);
+            args.add(String.valueOf(limit.gap));
+            args.add(String.valueOf(limit.gap));
+        }
+
+        if (limit.cycle > 0) {
+            keys.add("Limit:Cycle:" + id);
+            args.add(String.valueOf(limit.interval));
+            args.add(String.valueOf(limit.cycle));
+        }
+
+        List<Long> values;
+        try {
+            values = template.execute(SCRIPT, keys, args.toArray());
+        } catch (DataAccessException ex) {
+            logger.warn("限流脚本执行失败,按{}处理: {}", failOpen ? "放行" : "拒绝", ex.getMessage());
+            values = null;
+        }
+
+        if (values == null || values.size() < 2) {
+            errors.increment();
+            return failOpen ? new LimitResult(true, 0L, null) : new LimitResult(false, UNAVAILABLE_WAIT, limit.message);
+        }
+
+        long granted = values.get(0);
+        if (granted > 0) {
+            if (granted > 1) {
+                leases.put(id, new AtomicInteger((int) granted - 1));
+            }
+
+            return new LimitResult(true, 0L, null);
+        }
+
+        long wait = Math.max(values.get(1), 1);
+        denials.put(id, now + wait, now + wait);
+        remoteDenials.increment();
+
+        return new LimitResult(false, wait, limit.message);
+    }
+
+    /**
+     * 递增接口配置版本,使全部节点重新加载
+     */
+    public void bump() {
+        template.opsForValue().increment(VERSION_KEY);
+        reload();
+        channel.publish(CHANNEL, VERSION_KEY);
+    }
+
+    /**
+     * 从数据库加载启用限流的接口配置
+     */
+    public void reload() {
+        String value = template.opsForValue().get(VERSION_KEY);
+        Map<String, Limit> map = new HashMap<>();
+        for (InterfaceConfig config : mapper.getLimitConfigs()) {
+            Limit limit = new Limit(config);
+            if (limit.gap > 0 || limit.cycle > 0) {
+                map.put(config.getMethod().toUpperCase() + ":" + config.getUrl(), limit);
+            }
+        }
+
+        limits = map;
+        version = value == null || value.isEmpty() ? 0 : Long.parseLong(value);
+        denials.clear();
+        leases.clear();
+        logger.info("已加载{}个接口的限流配置", map.size());
+    }
+
+    /**
+     * 定时比对接口配置版本,以防丢失通知
+     */
+    @Scheduled(fixedDelayString = "${insight.auth.rate-limit.check-interval:60000}")
+    public void checkVersion() {
+        String value = template.opsForValue().get(VERSION_KEY);
+        long current = value == null || value.isEmpty() ? 0 : Long.parseLong(value);
+        if (current != version) {
+            reload();
+        }
+    }
+
+    /**
+     * 接口限额
+     */
+    static final class Limit {
+
+        /**
+         * 最小间隔(毫秒),0表示不限
+         */
+        final long gap;
+
+        /**
+         * 限流周期(毫秒),0表示不限
+         */
+        final long cycle;
+
+        /**
+         * 周期内每次调用的平均间隔(毫秒)
+         */
+        final double interval;
+
+        /**
+         * 每次向Redis获取的许可数量
+         */
+        final int lease;
+
+        /**
+         * 限流消息
+         */
+        final String message;
+
+        Limit(InterfaceConfig config) {
+            Integer limitGap = config.getLimitGap();
+            Integer limitCycle = config.getLimitCycle();
+            Integer limitMax = config.getLimitMax();
+            boolean cyclic = limitCycle != null && limitCycle > 0 && limitMax != null && limitMax > 0;
+
+            gap = limitGap == null ? 0 : limitGap * 1000L;
+            cycle = cyclic ? limitCycle * 1000L : 0;
+            interval = cyclic ? (double) cycle / limitMax : 0;
+            long rate = cyclic && gap == 0 ? Math.min(limitMax * LEASE_LIFE / cycle, LEASE_MAX) : 1;
+            lease = rate < LEASE_MIN ? 1 : (int) rate;
+            message = config.getMessage() == null || config.getMessage().isEmpty() ? DEFAULT_MESSAGE : config.getMessage();
+        }
+    }
+}
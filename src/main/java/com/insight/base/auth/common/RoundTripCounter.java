@@ -0,0 +1,36 @@
+package com.insight.base.auth.common;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/6
+ * @remark 当前请求的Redis网络往返次数计数器(管道批量操作计为一次),每次访问Redis的调用均须计数
+ */
+public final class RoundTripCounter {
+    private static final ThreadLocal<int[]> COUNTER = ThreadLocal.withInitial(() -> new int[1]);
+
+    private RoundTripCounter() {
+    }
+
+    /**
+     * 计数清零
+     */
+    public static void reset() {
+        COUNTER.get()[0] = 0;
+    }
+
+    /**
+     * 计数加一
+     */
+    public static void increment() {
+        COUNTER.get()[0]++;
+    }
+
+    /**
+     * 获取当前计数
+     *
+     * @return 往返次数
+     */
+    public static int get() {
+        return COUNTER.get()[0];
+    }
+}
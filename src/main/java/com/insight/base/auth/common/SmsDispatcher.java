@@ -0,0 +1,237 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.client.MessageClient;
+import com.insight.base.auth.common.dto.NormalMessage;
+import com.insight.utils.pojo.Reply;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/2
+ * @remark 短信异步发送队列
+ * <p>
+ * 登录验证码短信进入有界队列后立即返回,由固定数量的发送线程取出后逐条调用消息中心发送(消息中心接口每次只接收一条短信),
+ * 请求线程不再等待消息中心。
+ * 调用异常时按退避间隔重试;消息中心明确拒绝时不重试。发送状态写入SmsStatus:{Code},客户端可据此查询;
+ * 队列已满时直接拒绝并计入丢弃数量。
+ */
+@Component
+public class SmsDispatcher {
+    public static final String PENDING = "pending";
+    public static final String SENT = "sent";
+    public static final String FAILED = "failed";
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 每次从队列取出的最大数量,仅用于减少队列加锁次数
+     */
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * 重试间隔(毫秒),数组长度即最大重试次数
+     */
+    private static final long[] RETRY_DELAYS = {500, 2000, 5000};
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final MessageClient client;
+    private final StringRedisTemplate template;
+    private final BlockingQueue<Task> queue;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retries;
+    private final Timer latency;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter retried;
+    private final Counter dropped;
+    private volatile boolean running = true;
+
+    /**
+     * 构造方法
+     *
+     * @param client    MessageClient
+     * @param template  StringRedisTemplate
+     * @param registry  MeterRegistry
+     * @param queueSize 队列容量
+     * @param threads   发送线程数量
+     */
+    public SmsDispatcher(MessageClient client, StringRedisTemplate template, MeterRegistry registry,
+                         @Value("${insight.auth.sms.queue-size:10000}") int queueSize,
+                         @Value("${insight.auth.sms.threads:4}") int threads) {
+        this.client = client;
+        this.template = template;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.latency = Timer.builder("auth.sms.latency").publishPercentiles(0.5, 0.99).register(registry);
+        this.sent = registry.counter("auth.sms.sent");
+        this.failed = registry.counter("auth.sms.failed");
+        this.retried = registry.counter("auth.sms.retries");
+        this.dropped = registry.counter("auth.sms.dropped");
+        Gauge.builder("auth.sms.queue.depth", queue, BlockingQueue::size).register(registry);
+
+        AtomicInteger index = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> daemon(r, "sms-sender-" + index.incrementAndGet()));
+        this.retries = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "sms-retry"));
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::run);
+        }
+    }
+
+    /**
+     * 加入发送队列
+     *
+     * @param code    Code,用作发送状态的Key
+     * @param message 短信
+     * @param seconds 发送状态保留时间(秒)
+     * @return 是否已加入队列,队列已满时返回false
+     */
+    public boolean submit(String code, NormalMessage message, int seconds) {
+        // 先写入状态再入队,以免发送结果被等待状态覆盖
+        template.opsForValue().set(statusKey(code), PENDING, seconds, TimeUnit.SECONDS);
+        if (queue.offer(new Task(code, message, seconds))) {
+            return true;
+        }
+
+        dropped.increment();
+        template.delete(statusKey(code));
+        return false;
+    }
+
+    /**
+     * 获取发送状态
+     *
+     * @param code Code
+     * @return 状态及失败原因(pending/sent/failed|原因),不存在时返回null
+     */
+    public String getStatus(String code) {
+        return template.opsForValue().get(statusKey(code));
+    }
+
+    /**
+     * 停止发送线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.shutdownNow();
+        retries.shutdownNow();
+    }
+
+    /**
+     * 发送线程:一次取出多条,逐条发送
+     */
+    private void run() {
+        List<Task> batch = new ArrayList<>(BATCH_SIZE);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                batch.forEach(this::send);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                logger.error("发送短信失败", ex);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 发送短信,调用异常时安排重试
+     *
+     * @param task 发送任务
+     */
+    private void send(Task task) {
+        Reply reply;
+        try {
+            reply = client.sendMessage(task.message);
+        } catch (Exception ex) {
+            if (task.attempts < RETRY_DELAYS.length) {
+                retried.increment();
+                long delay = RETRY_DELAYS[task.attempts++];
+                retries.schedule(() -> retry(task), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            logger.warn("发送短信[{}]失败: {}", task.message.getReceivers(), ex.getMessage());
+            complete(task, FAILED + SEPARATOR + "发送短信失败,请稍后重试");
+            return;
+        }
+
+        if (reply != null && Boolean.TRUE.equals(reply.getSuccess())) {
+            complete(task, SENT);
+        } else {
+            complete(task, FAILED + SEPARATOR + (reply == null ? "发送短信失败,请稍后重试" : reply.getMessage()));
+        }
+    }
+
+    /**
+     * 重新加入发送队列
+     *
+     * @param task 发送任务
+     */
+    private void retry(Task task) {
+        if (!queue.offer(task)) {
+            dropped.increment();
+            complete(task, FAILED + SEPARATOR + "发送短信失败,请稍后重试");
+        }
+    }
+
+    /**
+     * 记录发送结果
+     *
+     * @param task   发送任务
+     * @param status 发送状态
+     */
+    private void complete(Task task, String status) {
+        latency.record(System.nanoTime() - task.createdTime, TimeUnit.NANOSECONDS);
+        if (status.startsWith(SENT)) {
+            sent.increment();
+        } else {
+            failed.increment();
+        }
+
+        template.opsForValue().set(statusKey(task.code), status, task.seconds, TimeUnit.SECONDS);
+    }
+
+    private static String statusKey(String code) {
+        return "SmsStatus:" + code;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+
+        return thread;
+    }
+
+    /**
+     * 发送任务
+     */
+    private static final class Task {
+        private final String code;
+        private final NormalMessage message;
+        private final int seconds;
+        private final long createdTime = System.nanoTime();
+        private int attempts;
+
+        Task(String code, NormalMessage message, int seconds) {
+            this.code = code;
+            this.message = message;
+            this.seconds = seconds;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.insight.base.auth.common;
 
+import com.insight.base.auth.common.cache.AccountFilter;
+import com.insight.base.auth.common.cache.AuthGraphCache;
 import com.insight.base.auth.common.mapper.ConfigMapper;
 import com.insight.utils.Json;
 import com.insight.utils.Redis;
@@ -17,9 +19,20 @@ import java.util.List;
  */
 public class TaskRunner implements ApplicationRunner {
     private final ConfigMapper mapper = ApplicationContextHolder.getContext().getBean(ConfigMapper.class);
+    private final AuthGraphCache graphCache = ApplicationContextHolder.getContext().getBean(AuthGraphCache.class);
+    private final AccountFilter accountFilter = ApplicationContextHolder.getContext().getBean(AccountFilter.class);
+    private final RateLimiter rateLimiter = ApplicationContextHolder.getContext().getBean(RateLimiter.class);
 
     @Override
     public void run(ApplicationArguments args) {
+        graphCache.loadAll();
+
+        // 登录标识过滤器在独立的后台线程中构建,构建完成前不拒绝任何账号
+        Thread builder = new Thread(accountFilter::rebuild, "account-filter-builder");
+        builder.setDaemon(true);
+        builder.start();
+        rateLimiter.reload();
+
         List<InterfaceDto> configs = mapper.loadConfigs();
         if (configs == null || configs.isEmpty()) {
             return;
@@ -1,11 +1,13 @@
 package com.insight.base.auth.common;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.insight.utils.Redis;
+import com.insight.base.auth.common.cache.AppPolicy;
 import com.insight.utils.Util;
 import com.insight.utils.pojo.AccessToken;
 import com.insight.utils.pojo.TokenInfo;
 
+import java.util.ArrayList;
+
 /**
  * @author 宣炳刚
  * @date 2018/1/4
@@ -13,6 +15,22 @@ import com.insight.utils.pojo.TokenInfo;
  */
 public class Token extends TokenInfo {
 
+    /**
+     * 授权码字典版本(编码位图时的字典长度)
+     */
+    private Integer permitVersion;
+
+    /**
+     * 授权码位图(序列化数据),设置后不再存储授权码集合
+     */
+    private byte[] permitBitmap;
+
+    /**
+     * 解码后的授权码位图
+     */
+    @JsonIgnore
+    private transient PermitBitmap bitmap;
+
     /**
      * 构造方法
      */
@@ -25,20 +43,47 @@ public class Token extends TokenInfo {
      * @param userId   用户ID
      * @param appId    应用ID
      * @param tenantId 租户ID
+     * @param policy   应用策略
      */
-    Token(String userId, String appId, String tenantId) {
-        String key = "App:" + appId;
+    Token(String userId, String appId, String tenantId, AppPolicy policy) {
         setUserId(userId);
         setAppId(appId);
         setTenantId(tenantId);
-        setPermitLife(Long.valueOf(Redis.get(key, "PermitLife")));
-        setLife(Long.valueOf(Redis.get(key, "TokenLife")));
-        setSignInOne(Boolean.valueOf(Redis.get(key, "SignInType")));
-        setAutoRefresh(Boolean.valueOf(Redis.get(key, "RefreshType")));
+        setPermitLife(policy.getPermitLife());
+        setLife(policy.getTokenLife());
+        setSignInOne(policy.isSignInOne());
+        setAutoRefresh(policy.isAutoRefresh());
         setSecretKey(Util.uuid());
         setRefreshKey(Util.uuid());
     }
 
+    /**
+     * 复制令牌,修改副本不影响缓存中的共享实例
+     *
+     * @return 令牌副本
+     */
+    public Token copy() {
+        Token token = new Token();
+        token.setUserId(getUserId());
+        token.setAppId(getAppId());
+        token.setTenantId(getTenantId());
+        token.setSecretKey(getSecretKey());
+        token.setRefreshKey(getRefreshKey());
+        token.setHash(getHash());
+        token.setPermitLife(getPermitLife());
+        token.setLife(getLife());
+        token.setSignInOne(getSignInOne());
+        token.setAutoRefresh(getAutoRefresh());
+        token.setPermitTime(getPermitTime());
+        token.setExpiryTime(getExpiryTime());
+        token.setFailureTime(getFailureTime());
+        token.setPermitFuncs(getPermitFuncs() == null ? null : new ArrayList<>(getPermitFuncs()));
+        token.setPermitVersion(permitVersion);
+        token.setPermitBitmap(permitBitmap);
+
+        return token;
+    }
+
     /**
      * 验证刷新密钥
      *
@@ -49,5 +94,41 @@ public class Token extends TokenInfo {
     public boolean verifyRefreshKey(AccessToken token) {
         return token != null && token.getSecret().equals(getRefreshKey());
     }
+
+    /**
+     * 位图中是否包含指定授权码编号
+     *
+     * @param id 授权码在应用字典中的编号
+     * @return 是否包含
+     */
+    @JsonIgnore
+    public boolean hasPermit(int id) {
+        if (permitBitmap == null) {
+            return false;
+        }
+
+        if (bitmap == null) {
+            bitmap = PermitBitmap.fromBytes(permitBitmap);
+        }
+
+        return bitmap.contains(id);
+    }
+
+    public Integer getPermitVersion() {
+        return permitVersion;
+    }
+
+    public void setPermitVersion(Integer permitVersion) {
+        this.permitVersion = permitVersion;
+    }
+
+    public byte[] getPermitBitmap() {
+        return permitBitmap;
+    }
+
+    public void setPermitBitmap(byte[] permitBitmap) {
+        this.permitBitmap = permitBitmap;
+        this.bitmap = null;
+    }
 }
 
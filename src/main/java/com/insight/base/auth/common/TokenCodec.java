@@ -0,0 +1,244 @@
+package com.insight.base.auth.common;
+
+import com.insight.utils.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/4
+ * @remark 令牌二进制编解码器
+ * <p>
+ * 格式: 标识字节(0xA5) + 版本号 + 字段数据。UUID字段以16字节存储,时间以毫秒时间戳存储。
+ * 版本2在末尾追加授权码字典版本和授权码位图。
+ * 解码时如首字节不是标识字节,则按JSON格式解析,以兼容旧格式的缓存数据。
+ */
+public final class TokenCodec {
+    private static final byte MAGIC = (byte) 0xA5;
+    private static final byte VERSION = 2;
+    private static final byte VERSION_1 = 1;
+    private static final byte NULL = 0;
+    private static final byte UUID = 1;
+    private static final byte TEXT = 2;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+
+    private TokenCodec() {
+    }
+
+    /**
+     * 编码令牌
+     *
+     * @param token 令牌
+     * @return 二进制数据
+     */
+    public static byte[] encode(Token token) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, token.getUserId());
+            writeString(out, token.getAppId());
+            writeString(out, token.getTenantId());
+            writeString(out, token.getSecretKey());
+            writeString(out, token.getRefreshKey());
+            writeString(out, token.getHash());
+
+            Long permitLife = token.getPermitLife();
+            Long life = token.getLife();
+            out.writeLong(permitLife == null ? 0 : permitLife);
+            out.writeLong(life == null ? 0 : life);
+            out.writeBoolean(Boolean.TRUE.equals(token.getSignInOne()));
+            out.writeBoolean(Boolean.TRUE.equals(token.getAutoRefresh()));
+            writeTime(out, token.getPermitTime());
+            writeTime(out, token.getExpiryTime());
+            writeTime(out, token.getFailureTime());
+
+            List<String> funcs = token.getPermitFuncs();
+            out.writeInt(funcs == null ? -1 : funcs.size());
+            if (funcs != null) {
+                for (String func : funcs) {
+                    out.writeUTF(func);
+                }
+            }
+
+            Integer permitVersion = token.getPermitVersion();
+            byte[] bitmap = token.getPermitBitmap();
+            out.writeInt(permitVersion == null ? -1 : permitVersion);
+            out.writeInt(bitmap == null ? -1 : bitmap.length);
+            if (bitmap != null) {
+                out.write(bitmap);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("令牌编码失败", ex);
+        }
+
+        return stream.toByteArray();
+    }
+
+    /**
+     * 解码令牌
+     *
+     * @param data 二进制数据或JSON字符串的UTF-8字节
+     * @return 令牌,数据为空或无法解析时返回null
+     */
+    public static Token decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+
+        if (data[0] != MAGIC) {
+            return Json.toBean(new String(data, StandardCharsets.UTF_8), Token.class);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            in.readByte();
+            byte version = in.readByte();
+            if (version != VERSION && version != VERSION_1) {
+                return null;
+            }
+
+            Token token = new Token();
+            token.setUserId(readString(in));
+            token.setAppId(readString(in));
+            token.setTenantId(readString(in));
+            token.setSecretKey(readString(in));
+            token.setRefreshKey(readString(in));
+            token.setHash(readString(in));
+            token.setPermitLife(in.readLong());
+            token.setLife(in.readLong());
+            token.setSignInOne(in.readBoolean());
+            token.setAutoRefresh(in.readBoolean());
+            token.setPermitTime(readTime(in));
+            token.setExpiryTime(readTime(in));
+            token.setFailureTime(readTime(in));
+
+            int count = in.readInt();
+            if (count >= 0) {
+                List<String> funcs = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    funcs.add(in.readUTF());
+                }
+
+                token.setPermitFuncs(funcs);
+            }
+
+            if (version == VERSION_1) {
+                return token;
+            }
+
+            int permitVersion = in.readInt();
+            token.setPermitVersion(permitVersion < 0 ? null : permitVersion);
+
+            int length = in.readInt();
+            if (length >= 0) {
+                byte[] bitmap = new byte[length];
+                in.readFully(bitmap);
+                token.setPermitBitmap(bitmap);
+            }
+
+            return token;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 写入字符串,32位小写十六进制字符串(UUID)压缩为16字节
+     *
+     * @param out   DataOutputStream
+     * @param value 字符串
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (isUuid(value)) {
+            out.writeByte(UUID);
+            out.writeLong(Long.parseUnsignedLong(value.substring(0, 16), 16));
+            out.writeLong(Long.parseUnsignedLong(value.substring(16), 16));
+        } else {
+            out.writeByte(TEXT);
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * 读取字符串
+     *
+     * @param in DataInputStream
+     * @return 字符串
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case UUID:
+                return toHex(in.readLong()) + toHex(in.readLong());
+            case TEXT:
+                return in.readUTF();
+            default:
+                throw new IOException("未知的字段类型: " + type);
+        }
+    }
+
+    /**
+     * 写入时间(毫秒精度)
+     *
+     * @param out  DataOutputStream
+     * @param time 时间
+     */
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time == null ? NULL_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    /**
+     * 读取时间
+     *
+     * @param in DataInputStream
+     * @return 时间
+     */
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        long value = in.readLong();
+
+        return value == NULL_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(value), ZoneOffset.UTC);
+    }
+
+    /**
+     * 是否32位小写十六进制字符串
+     *
+     * @param value 字符串
+     * @return 是否UUID
+     */
+    private static boolean isUuid(String value) {
+        if (value.length() != 32) {
+            return false;
+        }
+
+        for (int i = 0; i < 32; i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 长整数转16位十六进制字符串
+     *
+     * @param value 长整数
+     * @return 十六进制字符串
+     */
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+}
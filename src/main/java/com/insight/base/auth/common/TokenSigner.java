@@ -0,0 +1,201 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.dto.TokenClaims;
+import com.insight.utils.Json;
+import com.insight.utils.Util;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/9
+ * @remark 签名令牌生成/验证组件(JWT格式,HS256算法)
+ * <p>
+ * 签名令牌携带用户ID、应用ID、租户ID、过期时间和授权码摘要,网关持有相同密钥即可在内存中完成验证;
+ * 刷新和注销仍以Redis中的令牌记录为准。
+ */
+@Component
+public class TokenSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String HEADER = encode("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * 构造方法
+     *
+     * @param secret 签名密钥,为空时不发放签名令牌
+     */
+    public TokenSigner(@Value("${insight.auth.token-sign-key:}") String secret) {
+        this.key = secret.isEmpty() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("初始化签名算法失败", ex);
+            }
+        });
+    }
+
+    /**
+     * 是否已配置签名密钥
+     *
+     * @return 是否可发放签名令牌
+     */
+    public boolean isEnabled() {
+        return key != null;
+    }
+
+    /**
+     * 是否签名令牌
+     *
+     * @param token 令牌字符串
+     * @return 是否签名令牌
+     */
+    public static boolean isSigned(String token) {
+        return token != null && token.indexOf('.') > 0;
+    }
+
+    /**
+     * 读取签名令牌的令牌ID(不验证签名)
+     *
+     * @param token 签名令牌字符串
+     * @return 令牌ID,令牌格式错误时返回null
+     */
+    public static String readId(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+
+        TokenClaims claims = readClaims(parts[1]);
+
+        return claims == null ? null : claims.getId();
+    }
+
+    /**
+     * 生成签名令牌
+     *
+     * @param tokenId 令牌ID
+     * @param token   令牌数据(须已设置过期时间)
+     * @return 签名令牌字符串
+     */
+    public String sign(String tokenId, Token token) {
+        TokenClaims claims = new TokenClaims();
+        claims.setId(tokenId);
+        claims.setUserId(token.getUserId());
+        claims.setAppId(token.getAppId());
+        claims.setTenantId(token.getTenantId());
+        claims.setSecret(token.getSecretKey());
+        claims.setExpire(token.getExpiryTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        byte[] bitmap = token.getPermitBitmap();
+        claims.setPermits(bitmap == null ? digest(token.getPermitFuncs()) : token.getPermitVersion() + ":" + Util.md5(encode(bitmap)));
+
+        String content = HEADER + "." + encode(claims.toString().getBytes(StandardCharsets.UTF_8));
+        return content + "." + encode(hmac(content));
+    }
+
+    /**
+     * 验证签名令牌
+     *
+     * @param token 签名令牌字符串
+     * @return 令牌声明数据,签名错误或令牌已过期时返回null
+     */
+    public TokenClaims verify(String token) {
+        if (key == null || token == null) {
+            return null;
+        }
+
+        int index = token.lastIndexOf('.');
+        if (index < 0) {
+            return null;
+        }
+
+        String content = token.substring(0, index);
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(index + 1));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+
+        if (!MessageDigest.isEqual(signature, hmac(content))) {
+            return null;
+        }
+
+        TokenClaims claims = readClaims(content.substring(content.indexOf('.') + 1));
+        if (claims == null || claims.getExpire() == null || claims.getExpire() < System.currentTimeMillis()) {
+            return null;
+        }
+
+        return claims;
+    }
+
+    /**
+     * 计算授权码摘要
+     *
+     * @param permits 授权码集合
+     * @return 摘要
+     */
+    public static String digest(List<String> permits) {
+        if (permits == null || permits.isEmpty()) {
+            return null;
+        }
+
+        List<String> list = new ArrayList<>(permits);
+        Collections.sort(list);
+
+        return Util.md5(String.join(",", list));
+    }
+
+    /**
+     * 解析令牌声明数据
+     *
+     * @param payload Base64URL编码的声明数据
+     * @return 令牌声明数据,格式错误时返回null
+     */
+    private static TokenClaims readClaims(String payload) {
+        byte[] data;
+        try {
+            data = Base64.getUrlDecoder().decode(payload);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+
+        return Json.toBean(new String(data, StandardCharsets.UTF_8), TokenClaims.class);
+    }
+
+    /**
+     * 计算HMAC
+     *
+     * @param content 签名内容
+     * @return HMAC
+     */
+    private byte[] hmac(String content) {
+        return macs.get().doFinal(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Base64URL编码(无填充)
+     *
+     * @param data 数据
+     * @return 编码后的字符串
+     */
+    private static String encode(byte[] data) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+    }
+}
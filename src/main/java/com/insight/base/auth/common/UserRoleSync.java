@@ -0,0 +1,134 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.cache.AuthGraphCache;
+import com.insight.base.auth.common.cache.PermitCache;
+import com.insight.base.auth.common.mapper.ConfigMapper;
+import com.insight.utils.Util;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/29
+ * @remark 用户角色表(ibr_user_role)维护
+ * <p>
+ * 用户角色表是角色成员(用户、用户组、职位)展开后的物化结果,权限查询按用户ID直接命中索引。
+ * 成员关系变更时按用户或角色在同一事务中删除并重新展开;定时任务与ibv_user_roles视图比对,修复遗漏的变更。
+ */
+@Component
+public class UserRoleSync {
+    private static final String LOCK_KEY = "Lock:UserRole:Reconcile";
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 锁仍由本节点持有时删除锁:1.已删除;0.锁已过期或被其他节点持有
+     */
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end\n" +
+            "return 0", Long.class);
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final ConfigMapper mapper;
+    private final TransactionTemplate transaction;
+    private final StringRedisTemplate template;
+    private final AuthGraphCache graphCache;
+    private final PermitCache permitCache;
+    private final Counter drifts;
+
+    /**
+     * 本节点的锁标识,释放锁时据此确认锁仍由本节点持有
+     */
+    private final String owner = Util.uuid();
+
+    /**
+     * 构造方法
+     *
+     * @param mapper      ConfigMapper
+     * @param transaction TransactionTemplate
+     * @param template    StringRedisTemplate
+     * @param graphCache  AuthGraphCache
+     * @param permitCache PermitCache
+     * @param registry    MeterRegistry
+     */
+    public UserRoleSync(ConfigMapper mapper, TransactionTemplate transaction, StringRedisTemplate template,
+                        AuthGraphCache graphCache, PermitCache permitCache, MeterRegistry registry) {
+        this.mapper = mapper;
+        this.transaction = transaction;
+        this.template = template;
+        this.graphCache = graphCache;
+        this.permitCache = permitCache;
+        this.drifts = registry.counter("auth.user-role.drifts");
+    }
+
+    /**
+     * 重新展开用户的用户角色记录
+     *
+     * @param userIds 用户ID集合
+     */
+    public void syncUsers(Collection<String> userIds) {
+        List<String> list = new ArrayList<>(userIds);
+        for (int i = 0; i < list.size(); i += BATCH_SIZE) {
+            List<String> batch = list.subList(i, Math.min(i + BATCH_SIZE, list.size()));
+            transaction.execute(status -> {
+                mapper.deleteUserRoles(batch);
+                return mapper.addUserRoles(batch);
+            });
+        }
+    }
+
+    /**
+     * 重新展开角色的用户角色记录(角色删除或租户变更时)
+     *
+     * @param roleId 角色ID
+     */
+    public void syncRole(String roleId) {
+        transaction.execute(status -> {
+            mapper.deleteRoleUserRoles(roleId);
+            return mapper.addRoleUserRoles(roleId);
+        });
+    }
+
+    /**
+     * 定时比对用户角色表与角色成员,修复不一致的用户并使其缓存失效;多节点时仅取得锁的节点执行
+     */
+    @Scheduled(cron = "${insight.auth.user-role.reconcile-cron:0 30 3 * * ?}")
+    public void reconcile() {
+        Boolean locked = template.opsForValue().setIfAbsent(LOCK_KEY, owner, 30, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+
+        try {
+            List<String> userIds = mapper.getUserRoleDrifts();
+            if (userIds.isEmpty()) {
+                return;
+            }
+
+            drifts.increment(userIds.size());
+            logger.warn("用户角色表有{}个用户与角色成员不一致,已重新展开", userIds.size());
+            syncUsers(userIds);
+            for (String userId : userIds) {
+                graphCache.invalidateUser(userId);
+                permitCache.invalidate(userId);
+            }
+        } catch (Exception ex) {
+            logger.error("比对用户角色表失败", ex);
+        } finally {
+            // 执行超过锁的有效时间时锁可能已被其他节点取得,仅删除本节点持有的锁
+            template.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_KEY), owner);
+        }
+    }
+}
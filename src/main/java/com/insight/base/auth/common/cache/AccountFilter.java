@@ -0,0 +1,234 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.BloomFilter;
+import com.insight.base.auth.common.mapper.AuthMapper;
+import com.insight.utils.pojo.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/30
+ * @remark 登录标识过滤器
+ * <p>
+ * 以布隆过滤器记录全部用户的ID、账号、手机号、E-mail和UnionID,不存在的标识无需访问Redis和数据库即可拒绝。
+ * 启动时流式读取用户表构建;本服务新增用户或绑定UnionID时即时加入并通知各节点(Channel:Account),
+ * 其他服务新增或修改(更换账号、手机号、E-mail)的用户按更新时间(updated_time)定时增量同步加入,
+ * 每日全量重建以清除已不再使用的标识并按用户数调整容量。构建完成前不拒绝任何标识。
+ * 用户表的排序规则不区分大小写,故全部标识统一转为小写后加入和查询,以免大小写不同的标识被误拒。
+ */
+@Component
+public class AccountFilter {
+    private static final String CHANNEL = "Channel:Account";
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * 每个用户的登录标识数量(ID、账号、手机号、E-mail、UnionID)按上限5个估算
+     */
+    private static final int IDS_PER_USER = 5;
+
+    /**
+     * 增量同步时向前重叠的时间(分钟),以覆盖提交延迟和时钟误差
+     */
+    private static final int OVERLAP_MINUTES = 1;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final AuthMapper mapper;
+    private final CacheChannel channel;
+    private final Counter rejections;
+    private final double fpp;
+    private final long minSize;
+    private final AtomicBoolean building = new AtomicBoolean();
+    private final Object lock = new Object();
+    private volatile BloomFilter filter;
+    private volatile LocalDateTime watermark;
+
+    /**
+     * 构建期间新增的标识,构建完成后加入新过滤器
+     */
+    private List<String> pending;
+
+    /**
+     * 构造方法
+     *
+     * @param mapper   AuthMapper
+     * @param channel  CacheChannel
+     * @param registry MeterRegistry
+     * @param fpp      预期误判率
+     * @param minSize  最小容量(标识数)
+     */
+    public AccountFilter(AuthMapper mapper, CacheChannel channel, MeterRegistry registry,
+                         @Value("${insight.auth.account-filter.fpp:0.01}") double fpp,
+                         @Value("${insight.auth.account-filter.min-size:1000000}") long minSize) {
+        this.mapper = mapper;
+        this.channel = channel;
+        this.fpp = fpp;
+        this.minSize = minSize;
+        this.rejections = registry.counter("auth.account-filter.rejections");
+
+        Gauge.builder("auth.account-filter.bits", this, i -> i.filter == null ? 0 : i.filter.bitSize()).register(registry);
+        Gauge.builder("auth.account-filter.capacity", this, i -> i.filter == null ? 0 : i.filter.expected()).register(registry);
+        Gauge.builder("auth.account-filter.fpp", this, i -> i.filter == null ? 0 : i.filter.expectedFpp()).register(registry);
+
+        channel.subscribe(CHANNEL, this::receive);
+    }
+
+    /**
+     * 标识是否可能存在
+     *
+     * @param account 登录标识
+     * @return 返回false时标识一定不存在;过滤器未构建时返回true
+     */
+    public boolean mightContain(String account) {
+        BloomFilter current = filter;
+        if (current == null || account == null || current.mightContain(normalize(account))) {
+            return true;
+        }
+
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * 加入登录标识并通知各节点
+     *
+     * @param accounts 登录标识,空值忽略
+     */
+    public void put(String... accounts) {
+        List<String> list = new ArrayList<>(accounts.length);
+        for (String account : accounts) {
+            if (account != null && !account.isEmpty()) {
+                list.add(normalize(account));
+            }
+        }
+
+        if (list.isEmpty()) {
+            return;
+        }
+
+        list.forEach(this::add);
+        channel.publish(CHANNEL, String.join(SEPARATOR, list));
+    }
+
+    /**
+     * 由用户表全量构建过滤器,构建完成后替换当前过滤器
+     */
+    @Scheduled(cron = "${insight.auth.account-filter.rebuild-cron:0 0 4 * * ?}")
+    public void rebuild() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            LocalDateTime start = LocalDateTime.now().minusMinutes(OVERLAP_MINUTES);
+            synchronized (lock) {
+                pending = new ArrayList<>();
+            }
+
+            long count = mapper.getUserCount();
+            BloomFilter value = new BloomFilter(Math.max(minSize, count * IDS_PER_USER), fpp);
+            mapper.streamUsers(context -> add(value, context.getResultObject()));
+
+            synchronized (lock) {
+                pending.forEach(value::put);
+                pending = null;
+                filter = value;
+                watermark = start;
+            }
+
+            logger.info("登录标识过滤器已构建: {}个用户, {}位, 误判率{}", count, value.bitSize(), value.expectedFpp());
+        } catch (Exception ex) {
+            synchronized (lock) {
+                pending = null;
+            }
+
+            logger.error("构建登录标识过滤器失败", ex);
+        } finally {
+            building.set(false);
+        }
+    }
+
+    /**
+     * 定时加入新创建或登录标识已变更的用户
+     */
+    @Scheduled(fixedDelayString = "${insight.auth.account-filter.sync-interval:60000}")
+    public void sync() {
+        BloomFilter current = filter;
+        LocalDateTime since = watermark;
+        if (current == null || since == null || building.get()) {
+            return;
+        }
+
+        LocalDateTime next = LocalDateTime.now().minusMinutes(OVERLAP_MINUTES);
+        for (User user : mapper.getUsersChangedSince(since)) {
+            add(current, user);
+        }
+
+        watermark = next;
+    }
+
+    /**
+     * 处理其他节点加入标识的通知
+     *
+     * @param content 换行分隔的登录标识
+     */
+    private void receive(String content) {
+        for (String account : content.split(SEPARATOR)) {
+            add(normalize(account));
+        }
+    }
+
+    /**
+     * 加入当前过滤器,构建期间同时记录以便加入新过滤器
+     *
+     * @param account 已转为小写的登录标识
+     */
+    private void add(String account) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(account);
+        }
+
+        synchronized (lock) {
+            if (pending != null) {
+                pending.add(account);
+            }
+        }
+    }
+
+    /**
+     * 将用户的全部登录标识加入过滤器
+     *
+     * @param target 过滤器
+     * @param user   用户
+     */
+    private static void add(BloomFilter target, User user) {
+        String[] accounts = {user.getId(), user.getAccount(), user.getMobile(), user.getEmail(), user.getUnionId()};
+        for (String account : accounts) {
+            if (account != null && !account.isEmpty()) {
+                target.put(normalize(account));
+            }
+        }
+    }
+
+    /**
+     * 统一登录标识的大小写,与用户表不区分大小写的排序规则一致
+     *
+     * @param account 登录标识
+     * @return 小写的登录标识
+     */
+    private static String normalize(String account) {
+        return account.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,158 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.entity.TenantApp;
+import com.insight.utils.pojo.Application;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/16
+ * @remark 应用策略(不可变),由应用设置和租户应用有效期构成
+ */
+public final class AppPolicy {
+
+    /**
+     * 应用ID
+     */
+    private final String appId;
+
+    /**
+     * 策略版本
+     */
+    private final long version;
+
+    /**
+     * 加载时间(毫秒时间戳)
+     */
+    private final long loadedTime = System.currentTimeMillis();
+
+    /**
+     * 授权码生命周期(毫秒)
+     */
+    private final long permitLife;
+
+    /**
+     * 令牌生命周期(毫秒)
+     */
+    private final long tokenLife;
+
+    /**
+     * 是否单点登录
+     */
+    private final boolean signInOne;
+
+    /**
+     * 是否自动刷新
+     */
+    private final boolean autoRefresh;
+
+    /**
+     * 访问令牌模式:0.不透明令牌;1.HMAC签名令牌
+     */
+    private final int tokenMode;
+
+    /**
+     * 租户ID(升序)
+     */
+    private final String[] tenantIds;
+
+    /**
+     * 与租户ID对应的应用到期日(Epoch Day)
+     */
+    private final long[] expireDays;
+
+    /**
+     * 构造方法
+     *
+     * @param appId     应用ID
+     * @param app       应用信息
+     * @param tokenMode 访问令牌模式
+     * @param apps      租户应用集合
+     * @param version   策略版本
+     */
+    AppPolicy(String appId, Application app, Integer tokenMode, List<TenantApp> apps, long version) {
+        this.appId = appId;
+        this.version = version;
+        this.permitLife = Long.parseLong(String.valueOf(app.getPermitLife()));
+        this.tokenLife = Long.parseLong(String.valueOf(app.getTokenLife()));
+        this.signInOne = Boolean.parseBoolean(String.valueOf(app.getSigninOne()));
+        this.autoRefresh = Boolean.parseBoolean(String.valueOf(app.getAutoRefresh()));
+        this.tokenMode = tokenMode == null ? 0 : tokenMode;
+
+        List<TenantApp> list = new ArrayList<>(apps);
+        list.sort(Comparator.comparing(TenantApp::getTenantId));
+        this.tenantIds = new String[list.size()];
+        this.expireDays = new long[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            TenantApp item = list.get(i);
+            LocalDate date = item.getExpireDate();
+            tenantIds[i] = item.getTenantId();
+            expireDays[i] = date == null ? Long.MAX_VALUE : date.toEpochDay();
+        }
+    }
+
+    /**
+     * 租户的应用是否已过期,未订阅应用的租户视为已过期
+     *
+     * @param tenantId 租户ID
+     * @param today    当前日期(Epoch Day)
+     * @return 是否已过期
+     */
+    public boolean isExpired(String tenantId, long today) {
+        if (tenantId == null || tenantId.isEmpty()) {
+            return false;
+        }
+
+        int low = 0;
+        int high = tenantIds.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = tenantIds[mid].compareTo(tenantId);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return today > expireDays[mid];
+            }
+        }
+
+        return true;
+    }
+
+    public String getAppId() {
+        return appId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadedTime() {
+        return loadedTime;
+    }
+
+    public long getPermitLife() {
+        return permitLife;
+    }
+
+    public long getTokenLife() {
+        return tokenLife;
+    }
+
+    public boolean isSignInOne() {
+        return signInOne;
+    }
+
+    public boolean isAutoRefresh() {
+        return autoRefresh;
+    }
+
+    public int getTokenMode() {
+        return tokenMode;
+    }
+}
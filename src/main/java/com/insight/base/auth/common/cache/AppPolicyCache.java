@@ -0,0 +1,231 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.RoundTripCounter;
+import com.insight.base.auth.common.mapper.AuthMapper;
+import com.insight.utils.pojo.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/16
+ * @remark 应用策略进程内缓存
+ * <p>
+ * 应用策略从数据库加载后在有效时间内常驻内存,登录时的应用检查不产生任何I/O。
+ * 应用数据变更后调用bump方法递增Redis中的策略版本(Version:App:{appId})并通知各节点重新加载;
+ * 各节点另定时比对版本号,以防丢失通知。租户应用可能由其他服务新增或续租而不递增版本,
+ * 因此策略超过有效时间后重新加载,租户未订阅或已过期时也会在复查间隔后重新加载一次再作判断。
+ * 不存在的应用短时间缓存其不存在状态,无效的应用ID不会反复查询数据库。
+ */
+@Component
+public class AppPolicyCache {
+    private static final String CHANNEL = "Channel:App";
+
+    /**
+     * 租户未订阅或已过期时重新加载策略的最小间隔(毫秒)
+     */
+    private static final long RECHECK_INTERVAL = 10000;
+
+    /**
+     * 应用不存在状态的缓存时间(毫秒)
+     */
+    private static final long ABSENT_LIFE = 60000;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<String, AppPolicy> policies = new ConcurrentHashMap<>();
+    private final LocalCache<Boolean> absents = new LocalCache<>(10000, ABSENT_LIFE);
+    private final AuthMapper mapper;
+    private final StringRedisTemplate template;
+    private final CacheChannel channel;
+
+    /**
+     * 策略有效时间(毫秒)
+     */
+    private final long life;
+
+    /**
+     * 构造方法
+     *
+     * @param mapper   AuthMapper
+     * @param template StringRedisTemplate
+     * @param channel  CacheChannel
+     * @param life     策略有效时间(毫秒)
+     */
+    public AppPolicyCache(AuthMapper mapper, StringRedisTemplate template, CacheChannel channel,
+                          @Value("${insight.auth.app-policy.life:300000}") long life) {
+        this.mapper = mapper;
+        this.template = template;
+        this.channel = channel;
+        this.life = life;
+
+        channel.subscribe(CHANNEL, this::evict);
+    }
+
+    /**
+     * 获取应用策略
+     *
+     * @param appId 应用ID
+     * @return 应用策略,应用不存在时返回null
+     */
+    public AppPolicy get(String appId) {
+        AppPolicy policy = policies.get(appId);
+        if (policy != null && System.currentTimeMillis() - policy.getLoadedTime() < life) {
+            return policy;
+        }
+
+        if (policy == null && absents.get(appId) != null) {
+            return null;
+        }
+
+        return reload(appId, policy);
+    }
+
+    /**
+     * 应用是否不存在或租户的应用已过期
+     *
+     * @param appId    应用ID
+     * @param tenantId 租户ID
+     * @return 是否已过期
+     */
+    public boolean isExpired(String appId, String tenantId) {
+        AppPolicy policy = get(appId);
+        if (policy == null) {
+            return true;
+        }
+
+        long today = LocalDate.now().toEpochDay();
+        if (!policy.isExpired(tenantId, today)) {
+            return false;
+        }
+
+        // 租户可能由其他服务新增或续租,以重新加载的策略为准
+        if (System.currentTimeMillis() - policy.getLoadedTime() < RECHECK_INTERVAL) {
+            return true;
+        }
+
+        policy = reload(appId, policy);
+        return policy == null || policy.isExpired(tenantId, today);
+    }
+
+    /**
+     * 递增应用策略版本,使全部节点重新加载
+     *
+     * @param appId 应用ID
+     */
+    public void bump(String appId) {
+        RoundTripCounter.increment();
+        template.opsForValue().increment(versionKey(appId));
+        evict(appId);
+        channel.publish(CHANNEL, appId);
+    }
+
+    /**
+     * 定时比对策略版本,重新加载版本已变化的应用策略
+     */
+    @Scheduled(fixedDelayString = "${insight.auth.app-policy.check-interval:60000}")
+    public void checkVersions() {
+        if (policies.isEmpty()) {
+            return;
+        }
+
+        List<AppPolicy> list = new ArrayList<>(policies.values());
+        List<String> keys = new ArrayList<>(list.size());
+        list.forEach(i -> keys.add(versionKey(i.getAppId())));
+
+        RoundTripCounter.increment();
+        List<String> versions = template.opsForValue().multiGet(keys);
+        if (versions == null) {
+            return;
+        }
+
+        for (int i = 0; i < list.size(); i++) {
+            AppPolicy policy = list.get(i);
+            if (policy.getVersion() != parseVersion(versions.get(i))) {
+                logger.info("应用[{}]的策略版本已变更,重新加载", policy.getAppId());
+                policies.remove(policy.getAppId(), policy);
+            }
+        }
+    }
+
+    /**
+     * 移除应用策略及不存在状态
+     *
+     * @param appId 应用ID
+     */
+    private void evict(String appId) {
+        policies.remove(appId);
+        absents.remove(appId);
+    }
+
+    /**
+     * 在缓存映射之外加载应用策略,再替换缓存中的旧策略
+     *
+     * @param appId 应用ID
+     * @param stale 缓存中的旧策略,可为null
+     * @return 应用策略,应用不存在时返回null
+     */
+    private AppPolicy reload(String appId, AppPolicy stale) {
+        AppPolicy policy = load(appId);
+        if (policy == null) {
+            absents.put(appId, Boolean.TRUE);
+            if (stale != null) {
+                policies.remove(appId, stale);
+            }
+
+            return null;
+        }
+
+        if (stale != null && policies.replace(appId, stale, policy)) {
+            return policy;
+        }
+
+        AppPolicy current = policies.putIfAbsent(appId, policy);
+        return current == null ? policy : current;
+    }
+
+    /**
+     * 从数据库加载应用策略
+     *
+     * @param appId 应用ID
+     * @return 应用策略
+     */
+    private AppPolicy load(String appId) {
+        RoundTripCounter.increment();
+        long version = parseVersion(template.opsForValue().get(versionKey(appId)));
+        Application app = mapper.getApp(appId);
+        if (app == null) {
+            return null;
+        }
+
+        return new AppPolicy(appId, app, mapper.getTokenMode(appId), mapper.getApps(appId), version);
+    }
+
+    /**
+     * 策略版本Key
+     *
+     * @param appId 应用ID
+     * @return Key
+     */
+    private static String versionKey(String appId) {
+        return "Version:App:" + appId;
+    }
+
+    /**
+     * 解析版本号
+     *
+     * @param value 版本号字符串
+     * @return 版本号
+     */
+    private static long parseVersion(String value) {
+        return value == null || value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+}
@@ -0,0 +1,223 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.PermitBitmap;
+import com.insight.base.auth.common.RoundTripCounter;
+import com.insight.base.auth.common.Token;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/20
+ * @remark 应用授权码字典
+ * <p>
+ * 为应用的每个授权码分配稳定的整数编号。字典只追加不修改:Dict:AuthCode:{appId}为按编号排列的授权码列表,
+ * Dict:AuthCode:{appId}:Id为授权码到编号的Hash,新授权码由Lua脚本原子地追加。
+ * 字典长度即字典版本,令牌记录编码时的版本,新增功能后旧令牌的位图仍可正确解码。
+ */
+@Component
+public class AuthCodeDictionary {
+    private static final String SCRIPT_TEXT =
+            "local result = {}\n" +
+            "for i, code in ipairs(ARGV) do\n" +
+            "  local id = redis.call('HGET', KEYS[2], code)\n" +
+            "  if not id then\n" +
+            "    id = redis.call('RPUSH', KEYS[1], code) - 1\n" +
+            "    redis.call('HSET', KEYS[2], code, id)\n" +
+            "  end\n" +
+            "  result[i] = tonumber(id)\n" +
+            "end\n" +
+            "return result";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT = new DefaultRedisScript<>(SCRIPT_TEXT, List.class);
+    private final Map<String, Dictionary> dictionaries = new ConcurrentHashMap<>();
+    private final StringRedisTemplate template;
+
+    /**
+     * 构造方法
+     *
+     * @param template StringRedisTemplate
+     */
+    public AuthCodeDictionary(StringRedisTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * 以位图形式设置令牌的授权码,并清除授权码集合
+     *
+     * @param token 令牌
+     * @param codes 授权码集合
+     */
+    public void encode(Token token, List<String> codes) {
+        String appId = token.getAppId();
+        Dictionary dictionary = dictionary(appId);
+        int[] ids = new int[codes.size()];
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dictionary.idOf(codes.get(i));
+            if (ids[i] < 0) {
+                missing.add(codes.get(i));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            RoundTripCounter.increment();
+            template.execute(SCRIPT, Arrays.asList(listKey(appId), indexKey(appId)), missing.toArray());
+            sync(appId, dictionary);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] < 0) {
+                    ids[i] = dictionary.idOf(codes.get(i));
+                }
+            }
+        }
+
+        token.setPermitBitmap(PermitBitmap.of(ids).toBytes());
+        token.setPermitVersion(dictionary.size());
+        token.setPermitFuncs(null);
+    }
+
+    /**
+     * 读取令牌的授权码集合
+     *
+     * @param token 令牌
+     * @return 授权码集合
+     */
+    public List<String> decode(Token token) {
+        byte[] data = token.getPermitBitmap();
+        if (data == null) {
+            return token.getPermitFuncs();
+        }
+
+        Dictionary dictionary = current(token.getAppId(), token.getPermitVersion());
+        int[] ids = PermitBitmap.fromBytes(data).toArray();
+        List<String> codes = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            String code = dictionary.codeOf(id);
+            if (code != null) {
+                codes.add(code);
+            }
+        }
+
+        return codes;
+    }
+
+    /**
+     * 令牌是否拥有指定授权码
+     *
+     * @param token 令牌
+     * @param code  授权码
+     * @return 是否拥有授权码
+     */
+    public boolean hasPermit(Token token, String code) {
+        if (token.getPermitBitmap() == null) {
+            List<String> funcs = token.getPermitFuncs();
+            return funcs != null && funcs.contains(code);
+        }
+
+        Dictionary dictionary = current(token.getAppId(), token.getPermitVersion());
+        int id = dictionary.idOf(code);
+
+        return id >= 0 && id < dictionary.size() && token.hasPermit(id);
+    }
+
+    /**
+     * 获取不低于指定版本的字典
+     *
+     * @param appId   应用ID
+     * @param version 字典版本
+     * @return 字典
+     */
+    private Dictionary current(String appId, Integer version) {
+        Dictionary dictionary = dictionary(appId);
+        if (version != null && dictionary.size() < version) {
+            sync(appId, dictionary);
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * 获取进程内字典,首次访问时从Redis加载
+     *
+     * @param appId 应用ID
+     * @return 字典
+     */
+    private Dictionary dictionary(String appId) {
+        Dictionary dictionary = dictionaries.get(appId);
+        if (dictionary != null) {
+            return dictionary;
+        }
+
+        return dictionaries.computeIfAbsent(appId, k -> {
+            Dictionary value = new Dictionary();
+            sync(k, value);
+
+            return value;
+        });
+    }
+
+    /**
+     * 从Redis追加读取进程内字典中尚未包含的条目
+     *
+     * @param appId      应用ID
+     * @param dictionary 字典
+     */
+    private void sync(String appId, Dictionary dictionary) {
+        synchronized (dictionary) {
+            RoundTripCounter.increment();
+            List<String> codes = template.opsForList().range(listKey(appId), dictionary.size(), -1);
+            if (codes != null) {
+                dictionary.append(codes);
+            }
+        }
+    }
+
+    private static String listKey(String appId) {
+        return "Dict:AuthCode:" + appId;
+    }
+
+    private static String indexKey(String appId) {
+        return "Dict:AuthCode:" + appId + ":Id";
+    }
+
+    /**
+     * 进程内字典(只追加)
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] codes = new String[0];
+
+        int size() {
+            return codes.length;
+        }
+
+        int idOf(String code) {
+            Integer id = ids.get(code);
+
+            return id == null ? -1 : id;
+        }
+
+        String codeOf(int id) {
+            String[] array = codes;
+
+            return id >= 0 && id < array.length ? array[id] : null;
+        }
+
+        void append(List<String> list) {
+            String[] array = Arrays.copyOf(codes, codes.length + list.size());
+            for (int i = 0; i < list.size(); i++) {
+                int id = codes.length + i;
+                array[id] = list.get(i);
+                ids.put(list.get(i), id);
+            }
+
+            codes = array;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.dto.FuncDto;
+import com.insight.base.auth.common.dto.NavDto;
+import com.insight.base.auth.common.entity.FunctionAuthCode;
+import com.insight.base.auth.common.entity.RolePermit;
+
+import java.util.*;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/23
+ * @remark 应用授权图(不可变)
+ * <p>
+ * 包含应用的导航/功能树、功能授权码和各角色的功能权限向量,导航、功能、授权码和角色均以数组下标索引。
+ * 权限计算与SQL语义一致:同一功能的全部授权记录中任一拒绝即为拒绝(min(permit) > 0)。
+ * 计算时只访问用户角色的权限向量,功能授权状态记录在线程内复用的数组中,计算后按原路径清零。
+ * 模块功能的计算结果以(模块, 有效角色集指纹)为键缓存,角色组合相同的用户共享同一结果;授权图重建后缓存随之废弃。
+ */
+public final class AuthGraph {
+    private static final byte NONE = 0;
+    private static final byte ALLOW = 1;
+    private static final byte DENY = 2;
+    private static final int RESULT_SIZE = 10000;
+    private static final long RESULT_LIFE = 3600000;
+
+    /**
+     * 线程内复用的功能授权状态数组,各应用授权图共用,使用后清零;长度不足时按当前图的功能数量扩容
+     */
+    private static final ThreadLocal<byte[]> STATES = ThreadLocal.withInitial(() -> new byte[0]);
+
+    /**
+     * 图版本
+     */
+    private final long version;
+
+    private final NavigatorTree tree;
+    private final FuncDto[] funcs;
+    private final int[] funcNavs;
+    private final int[][] funcCodes;
+
+    /**
+     * 各导航的功能下标,按序号排序
+     */
+    private final int[][] moduleFuncs;
+
+    private final String[] codes;
+    private final Map<String, Integer> roleIndex;
+    private final String[] roleTenants;
+    private final int[][] roleFuncs;
+    private final boolean[][] roleAllows;
+
+    /**
+     * 模块功能计算结果,以"模块下标:角色集指纹"为键
+     */
+    private final LocalCache<List<FuncDto>> results = new LocalCache<>(RESULT_SIZE, RESULT_LIFE);
+
+    /**
+     * 构造方法
+     *
+     * @param version    图版本
+     * @param navList    导航集合
+     * @param funcList   功能集合
+     * @param codeList   功能授权码集合
+     * @param permitList 角色功能权限集合
+     */
+    AuthGraph(long version, List<NavDto> navList, List<FuncDto> funcList, List<FunctionAuthCode> codeList, List<RolePermit> permitList) {
+        this.version = version;
+
+        // 导航
+        tree = new NavigatorTree(navList);
+
+        // 功能
+        funcs = funcList.toArray(new FuncDto[0]);
+        funcNavs = new int[funcs.length];
+        Map<String, Integer> funcIndex = new HashMap<>(funcs.length * 2);
+        List<List<Integer>> modules = lists(tree.size());
+        for (int i = 0; i < funcs.length; i++) {
+            funcIndex.put(funcs[i].getId(), i);
+            funcNavs[i] = tree.indexOf(funcs[i].getNavId());
+            if (funcNavs[i] >= 0) {
+                modules.get(funcNavs[i]).add(i);
+            }
+        }
+
+        moduleFuncs = new int[tree.size()][];
+        Comparator<Integer> byIndex = Comparator.comparing(i -> funcs[i].getIndex(), Comparator.nullsFirst(Comparator.<Integer>naturalOrder()));
+        for (int i = 0; i < moduleFuncs.length; i++) {
+            List<Integer> list = modules.get(i);
+            list.sort(byIndex);
+            moduleFuncs[i] = list.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // 功能授权码
+        Map<String, Integer> codeIndex = new HashMap<>();
+        List<List<Integer>> funcCodeList = lists(funcs.length);
+        for (FunctionAuthCode item : codeList) {
+            int func = indexOf(funcIndex, item.getFunctionId());
+            if (func < 0) {
+                continue;
+            }
+
+            Integer code = codeIndex.computeIfAbsent(item.getAuthCode(), k -> codeIndex.size());
+            funcCodeList.get(func).add(code);
+        }
+
+        codes = new String[codeIndex.size()];
+        codeIndex.forEach((k, v) -> codes[v] = k);
+        funcCodes = toArrays(funcCodeList);
+
+        // 角色功能权限
+        roleIndex = new HashMap<>();
+        List<String> tenants = new ArrayList<>();
+        List<List<Integer>> roleFuncList = new ArrayList<>();
+        List<List<Boolean>> roleAllowList = new ArrayList<>();
+        for (RolePermit item : permitList) {
+            int func = indexOf(funcIndex, item.getFunctionId());
+            if (func < 0) {
+                continue;
+            }
+
+            Integer role = roleIndex.get(item.getRoleId());
+            if (role == null) {
+                role = tenants.size();
+                roleIndex.put(item.getRoleId(), role);
+                tenants.add(item.getTenantId());
+                roleFuncList.add(new ArrayList<>());
+                roleAllowList.add(new ArrayList<>());
+            }
+
+            roleFuncList.get(role).add(func);
+            roleAllowList.get(role).add(Boolean.TRUE.equals(item.getPermit()));
+        }
+
+        roleTenants = tenants.toArray(new String[0]);
+        roleFuncs = toArrays(roleFuncList);
+        roleAllows = new boolean[roleAllowList.size()][];
+        for (int i = 0; i < roleAllows.length; i++) {
+            List<Boolean> list = roleAllowList.get(i);
+            roleAllows[i] = new boolean[list.size()];
+            for (int j = 0; j < list.size(); j++) {
+                roleAllows[i][j] = list.get(j);
+            }
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 计算用户授权码,对应AuthMapper.getAuthInfos:租户ID须与角色租户一致(均为空亦可),按(导航, 授权码)分组
+     *
+     * @param roleIds  用户的角色ID集合
+     * @param tenantId 租户ID
+     * @return 授权码集合
+     */
+    public List<String> getAuthInfos(String[] roleIds, String tenantId) {
+        int[] roles = matchRoles(roleIds, tenantId, true);
+        byte[] states = mark(roles);
+        Map<Long, Boolean> groups = new HashMap<>();
+        try {
+            for (int role : roles) {
+                for (int f : roleFuncs[role]) {
+                    if (funcNavs[f] < 0) {
+                        continue;
+                    }
+
+                    for (int code : funcCodes[f]) {
+                        long key = (long) funcNavs[f] << 32 | code;
+                        if (states[f] == DENY) {
+                            groups.put(key, false);
+                        } else {
+                            groups.putIfAbsent(key, true);
+                        }
+                    }
+                }
+            }
+        } finally {
+            clear(roles, states);
+        }
+
+        List<String> list = new ArrayList<>(groups.size());
+        groups.forEach((k, v) -> {
+            if (v) {
+                list.add(codes[(int) (long) k]);
+            }
+        });
+
+        return list;
+    }
+
+    /**
+     * 计算用户可用的导航,对应AuthMapper.getNavigators:角色租户为空或与租户ID一致
+     *
+     * @param roleIds  用户的角色ID集合
+     * @param tenantId 租户ID
+     * @return 导航集合(共享实例,不得修改)
+     */
+    public List<NavDto> getNavigators(String[] roleIds, String tenantId) {
+        int[] roles = matchRoles(roleIds, tenantId, false);
+        byte[] states = mark(roles);
+        boolean[] included = new boolean[tree.size()];
+        try {
+            for (int role : roles) {
+                for (int f : roleFuncs[role]) {
+                    if (states[f] == ALLOW && funcNavs[f] >= 0) {
+                        tree.include(included, funcNavs[f]);
+                    }
+                }
+            }
+        } finally {
+            clear(roles, states);
+        }
+
+        return tree.prune(included);
+    }
+
+    /**
+     * 获取模块的功能及对用户的授权情况,对应AuthMapper.getModuleFunctions:角色租户为空或与租户ID一致
+     *
+     * @param moduleId 模块ID
+     * @param roleIds  用户的角色ID集合
+     * @param tenantId 租户ID
+     * @return 功能集合,模块不属于本应用时返回null
+     */
+    public List<FuncDto> getModuleFunctions(String moduleId, String[] roleIds, String tenantId) {
+        return getModuleFunctions(moduleId, roleSet(roleIds, tenantId));
+    }
+
+    /**
+     * 获取模块的功能及对角色集的授权情况,角色集相同时返回缓存的同一结果
+     *
+     * @param moduleId 模块ID
+     * @param roleSet  有效角色集,须由本授权图生成
+     * @return 功能集合(共享实例,不得修改),模块不属于本应用时返回null
+     */
+    public List<FuncDto> getModuleFunctions(String moduleId, RoleSet roleSet) {
+        int nav = tree.indexOf(moduleId);
+        if (nav < 0) {
+            return null;
+        }
+
+        if (roleSet.graph != this) {
+            throw new IllegalArgumentException("角色集不属于本授权图");
+        }
+
+        String key = nav + ":" + roleSet.fingerprint;
+        List<FuncDto> list = results.get(key);
+        if (list != null) {
+            return list;
+        }
+
+        int[] roles = roleSet.roles;
+        byte[] states = mark(roles);
+        list = new ArrayList<>(moduleFuncs[nav].length);
+        try {
+            for (int f : moduleFuncs[nav]) {
+                FuncDto dto = copy(funcs[f]);
+                dto.setPermit(states[f] == NONE ? null : states[f] == ALLOW);
+                list.add(dto);
+            }
+        } finally {
+            clear(roles, states);
+        }
+
+        list = Collections.unmodifiableList(list);
+        results.put(key, list);
+
+        return list;
+    }
+
+    /**
+     * 生成用户在租户下的有效角色集(角色租户为空或与租户ID一致),角色按下标排序后生成指纹
+     *
+     * @param roleIds  用户的角色ID集合
+     * @param tenantId 租户ID
+     * @return 有效角色集
+     */
+    public RoleSet roleSet(String[] roleIds, String tenantId) {
+        int[] roles = matchRoles(roleIds, tenantId, false);
+        Arrays.sort(roles);
+
+        int count = 0;
+        StringBuilder builder = new StringBuilder(roles.length * 4);
+        for (int i = 0; i < roles.length; i++) {
+            if (i > 0 && roles[i] == roles[i - 1]) {
+                continue;
+            }
+
+            if (count++ > 0) {
+                builder.append(',');
+            }
+
+            builder.append(Integer.toString(roles[i], 36));
+            roles[count - 1] = roles[i];
+        }
+
+        return new RoleSet(this, Arrays.copyOf(roles, count), builder.toString());
+    }
+
+    /**
+     * 筛选满足租户条件的角色
+     *
+     * @param roleIds  用户的角色ID集合
+     * @param tenantId 租户ID
+     * @param exact    是否要求角色租户与租户ID严格一致;否则租户为空的角色亦有效
+     * @return 角色下标
+     */
+    private int[] matchRoles(String[] roleIds, String tenantId, boolean exact) {
+        int[] roles = new int[roleIds.length];
+        int count = 0;
+        for (String roleId : roleIds) {
+            Integer role = roleIndex.get(roleId);
+            if (role != null && matchTenant(roleTenants[role], tenantId, exact)) {
+                roles[count++] = role;
+            }
+        }
+
+        return count == roles.length ? roles : Arrays.copyOf(roles, count);
+    }
+
+    /**
+     * 在线程内的状态数组中标记角色涉及的功能授权状态(NONE/ALLOW/DENY)
+     *
+     * @param roles 角色下标
+     * @return 功能授权状态
+     */
+    private byte[] mark(int[] roles) {
+        byte[] states = STATES.get();
+        if (states.length < funcs.length) {
+            states = new byte[funcs.length];
+            STATES.set(states);
+        }
+
+        for (int role : roles) {
+            int[] list = roleFuncs[role];
+            boolean[] allows = roleAllows[role];
+            for (int i = 0; i < list.length; i++) {
+                int f = list[i];
+                if (!allows[i]) {
+                    states[f] = DENY;
+                } else if (states[f] == NONE) {
+                    states[f] = ALLOW;
+                }
+            }
+        }
+
+        return states;
+    }
+
+    /**
+     * 清零已标记的功能授权状态
+     *
+     * @param roles  角色下标
+     * @param states 功能授权状态
+     */
+    private void clear(int[] roles, byte[] states) {
+        for (int role : roles) {
+            for (int f : roleFuncs[role]) {
+                states[f] = NONE;
+            }
+        }
+    }
+
+    /**
+     * 角色租户是否满足条件
+     *
+     * @param roleTenant 角色租户ID
+     * @param tenantId   租户ID
+     * @param exact      是否严格一致
+     * @return 是否满足
+     */
+    private static boolean matchTenant(String roleTenant, String tenantId, boolean exact) {
+        if (roleTenant == null) {
+            return !exact || tenantId == null;
+        }
+
+        return roleTenant.equals(tenantId);
+    }
+
+    /**
+     * 有效角色集:已按租户筛选、排序并去重的角色下标及其指纹,仅对生成它的授权图有效
+     */
+    public static final class RoleSet {
+        private final AuthGraph graph;
+        private final int[] roles;
+        private final String fingerprint;
+
+        private RoleSet(AuthGraph graph, int[] roles, String fingerprint) {
+            this.graph = graph;
+            this.roles = roles;
+            this.fingerprint = fingerprint;
+        }
+
+        public AuthGraph getGraph() {
+            return graph;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+    }
+
+    private static FuncDto copy(FuncDto func) {
+        FuncDto dto = new FuncDto();
+        dto.setId(func.getId());
+        dto.setNavId(func.getNavId());
+        dto.setType(func.getType());
+        dto.setIndex(func.getIndex());
+        dto.setName(func.getName());
+        dto.setAuthCodes(func.getAuthCodes());
+        dto.setFuncInfo(func.getFuncInfo());
+
+        return dto;
+    }
+
+    private static int indexOf(Map<String, Integer> index, String key) {
+        Integer value = key == null ? null : index.get(key);
+
+        return value == null ? -1 : value;
+    }
+
+    private static List<List<Integer>> lists(int size) {
+        List<List<Integer>> lists = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lists.add(new ArrayList<>());
+        }
+
+        return lists;
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        return arrays;
+    }
+}
@@ -0,0 +1,351 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.RoundTripCounter;
+import com.insight.base.auth.common.dto.FuncDto;
+import com.insight.base.auth.common.dto.NavDto;
+import com.insight.base.auth.common.mapper.AuthMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/23
+ * @remark 应用授权图缓存
+ * <p>
+ * 启动时加载全部应用的授权图,导航、模块功能和授权码均在内存中计算。角色、权限或功能变更时调用reload,
+ * 仅重建该应用的授权图(递增Version:Graph:{appId}并通知各节点);用户的角色成员关系按需加载并单独失效。
+ * 用户在各(应用, 租户)下的有效角色集指纹随成员关系一并缓存,成员关系失效或授权图重建后重新生成。
+ * 启动后新建的应用在首次访问时加载;应用表中不存在的应用ID不加载授权图,并在进程内记录一段时间以免重复查询。
+ */
+@Component
+public class AuthGraphCache {
+    private static final String GRAPH_CHANNEL = "Channel:Graph";
+    private static final String MEMBER_CHANNEL = "Channel:UserRole";
+    private static final String ALL = "*";
+
+    /**
+     * 不存在的应用ID的缓存时间(毫秒)
+     */
+    private static final long ABSENT_LIFE = 60000;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<String, AuthGraph> graphs = new ConcurrentHashMap<>();
+    private final LocalCache<Boolean> absents = new LocalCache<>(10000, ABSENT_LIFE);
+    private final LocalCache<Membership> memberships;
+    private final AuthMapper mapper;
+    private final StringRedisTemplate template;
+    private final CacheChannel channel;
+    private final Timer navigatorTimer;
+
+    /**
+     * 构造方法
+     *
+     * @param mapper   AuthMapper
+     * @param template StringRedisTemplate
+     * @param channel  CacheChannel
+     * @param registry MeterRegistry
+     * @param size     最大缓存用户数
+     * @param life     用户角色成员关系的缓存时间(毫秒)
+     */
+    public AuthGraphCache(AuthMapper mapper, StringRedisTemplate template, CacheChannel channel, MeterRegistry registry,
+                          @Value("${insight.auth.user-role-cache.size:10000}") int size,
+                          @Value("${insight.auth.user-role-cache.life:600000}") long life) {
+        this.memberships = new LocalCache<>(size, life);
+        this.mapper = mapper;
+        this.template = template;
+        this.channel = channel;
+        this.navigatorTimer = Timer.builder("auth.navigators.latency").publishPercentiles(0.5, 0.99).register(registry);
+
+        channel.subscribe(GRAPH_CHANNEL, this::refresh);
+        channel.subscribe(MEMBER_CHANNEL, this::receiveMember);
+    }
+
+    /**
+     * 加载全部应用的授权图
+     */
+    public void loadAll() {
+        for (String appId : mapper.getAppIds()) {
+            refresh(appId);
+        }
+
+        logger.info("已加载{}个应用的授权图", graphs.size());
+    }
+
+    /**
+     * 获取应用授权图,未加载时在映射之外从数据库加载
+     *
+     * @param appId 应用ID
+     * @return 应用授权图,应用不存在时返回null
+     */
+    public AuthGraph get(String appId) {
+        if (appId == null) {
+            return null;
+        }
+
+        AuthGraph graph = graphs.get(appId);
+        if (graph != null) {
+            return graph;
+        }
+
+        if (absents.get(appId) != null) {
+            return null;
+        }
+
+        if (!mapper.getAppIds().contains(appId)) {
+            absents.put(appId, Boolean.TRUE);
+            return null;
+        }
+
+        graph = load(appId);
+        AuthGraph current = graphs.putIfAbsent(appId, graph);
+
+        return current == null ? graph : current;
+    }
+
+    /**
+     * 应用授权图是否已加载
+     *
+     * @param appId 应用ID
+     * @return 是否已加载
+     */
+    public boolean contains(String appId) {
+        return appId != null && graphs.containsKey(appId);
+    }
+
+    /**
+     * 计算用户授权码
+     *
+     * @param appId    应用ID
+     * @param tenantId 租户ID
+     * @param userId   用户ID
+     * @return 授权码集合,应用不存在时返回空集合
+     */
+    public List<String> getAuthInfos(String appId, String tenantId, String userId) {
+        AuthGraph graph = get(appId);
+
+        return graph == null ? Collections.emptyList() : graph.getAuthInfos(getRoleIds(userId), tenantId);
+    }
+
+    /**
+     * 计算用户可用的导航
+     *
+     * @param appId    应用ID
+     * @param tenantId 租户ID
+     * @param userId   用户ID
+     * @return 导航集合(共享实例,不得修改),应用不存在时返回空集合
+     */
+    public List<NavDto> getNavigators(String appId, String tenantId, String userId) {
+        AuthGraph graph = get(appId);
+        if (graph == null) {
+            return Collections.emptyList();
+        }
+
+        String[] roleIds = getRoleIds(userId);
+
+        return navigatorTimer.record(() -> graph.getNavigators(roleIds, tenantId));
+    }
+
+    /**
+     * 获取模块的功能及对用户的授权情况
+     *
+     * @param appId    应用ID
+     * @param moduleId 模块ID
+     * @param tenantId 租户ID
+     * @param userId   用户ID
+     * @return 功能集合(共享实例,不得修改),应用不存在或模块不属于该应用时返回null
+     */
+    public List<FuncDto> getModuleFunctions(String appId, String moduleId, String tenantId, String userId) {
+        AuthGraph graph = get(appId);
+        if (graph == null) {
+            return null;
+        }
+
+        Membership membership = getMembership(userId);
+        String key = appId + ":" + (tenantId == null ? "" : tenantId);
+        AuthGraph.RoleSet roleSet = membership.roleSets.get(key);
+        if (roleSet == null || roleSet.getGraph() != graph) {
+            roleSet = graph.roleSet(membership.roleIds, tenantId);
+            membership.roleSets.put(key, roleSet);
+        }
+
+        return graph.getModuleFunctions(moduleId, roleSet);
+    }
+
+    /**
+     * 重建应用授权图(全部节点)
+     *
+     * @param appId 应用ID
+     */
+    public void reload(String appId) {
+        RoundTripCounter.increment();
+        template.opsForValue().increment(versionKey(appId));
+        refresh(appId);
+        channel.publish(GRAPH_CHANNEL, appId);
+    }
+
+    /**
+     * 重建功能所属应用的授权图(全部节点),功能不存在时重建全部应用的授权图
+     *
+     * @param functionId 功能ID
+     */
+    public void reloadByFunction(String functionId) {
+        String appId = functionId == null ? null : mapper.getFunctionAppId(functionId);
+        if (appId == null) {
+            reloadAll();
+        } else {
+            reload(appId);
+        }
+    }
+
+    /**
+     * 重建全部应用的授权图(全部节点)
+     */
+    public void reloadAll() {
+        for (String appId : mapper.getAppIds()) {
+            reload(appId);
+        }
+    }
+
+    /**
+     * 使用户的角色成员关系失效(全部节点)
+     *
+     * @param userId 用户ID
+     */
+    public void invalidateUser(String userId) {
+        memberships.remove(userId);
+        channel.publish(MEMBER_CHANNEL, userId);
+    }
+
+    /**
+     * 使全部用户的角色成员关系失效(全部节点)
+     */
+    public void invalidateUsers() {
+        memberships.clear();
+        channel.publish(MEMBER_CHANNEL, ALL);
+    }
+
+    /**
+     * 定时比对授权图版本,以防丢失通知
+     */
+    @Scheduled(fixedDelayString = "${insight.auth.graph.check-interval:60000}")
+    public void checkVersions() {
+        if (graphs.isEmpty()) {
+            return;
+        }
+
+        List<String> appIds = new ArrayList<>(graphs.keySet());
+        List<String> keys = new ArrayList<>(appIds.size());
+        appIds.forEach(i -> keys.add(versionKey(i)));
+
+        RoundTripCounter.increment();
+        List<String> versions = template.opsForValue().multiGet(keys);
+        if (versions == null) {
+            return;
+        }
+
+        for (int i = 0; i < appIds.size(); i++) {
+            AuthGraph graph = graphs.get(appIds.get(i));
+            if (graph != null && graph.getVersion() != parseVersion(versions.get(i))) {
+                refresh(appIds.get(i));
+            }
+        }
+    }
+
+    /**
+     * 处理角色成员关系失效通知
+     *
+     * @param content 用户ID或"*"(全部)
+     */
+    private void receiveMember(String content) {
+        if (ALL.equals(content)) {
+            memberships.clear();
+        } else {
+            memberships.remove(content);
+        }
+    }
+
+    /**
+     * 获取用户的角色ID集合
+     *
+     * @param userId 用户ID
+     * @return 角色ID集合
+     */
+    private String[] getRoleIds(String userId) {
+        return getMembership(userId).roleIds;
+    }
+
+    /**
+     * 获取用户的角色成员关系
+     *
+     * @param userId 用户ID
+     * @return 角色成员关系
+     */
+    private Membership getMembership(String userId) {
+        Membership membership = memberships.get(userId);
+        if (membership == null) {
+            membership = new Membership(mapper.getUserRoleIds(userId).toArray(new String[0]));
+            memberships.put(userId, membership);
+        }
+
+        return membership;
+    }
+
+    /**
+     * 重新加载应用授权图,加载完成前继续使用原授权图
+     *
+     * @param appId 应用ID
+     */
+    private void refresh(String appId) {
+        try {
+            graphs.put(appId, load(appId));
+            absents.remove(appId);
+        } catch (Exception ex) {
+            logger.error("加载应用[{}]的授权图失败", appId, ex);
+        }
+    }
+
+    /**
+     * 从数据库加载应用授权图
+     *
+     * @param appId 应用ID
+     * @return 应用授权图
+     */
+    private AuthGraph load(String appId) {
+        RoundTripCounter.increment();
+        long version = parseVersion(template.opsForValue().get(versionKey(appId)));
+
+        return new AuthGraph(version, mapper.getAppNavigators(appId), mapper.getAppFunctions(appId),
+                mapper.getAppAuthCodes(appId), mapper.getAppPermits(appId));
+    }
+
+    private static String versionKey(String appId) {
+        return "Version:Graph:" + appId;
+    }
+
+    private static long parseVersion(String value) {
+        return value == null || value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+
+    /**
+     * 用户的角色成员关系及各(应用, 租户)下的有效角色集
+     */
+    private static class Membership {
+        private final String[] roleIds;
+        private final Map<String, AuthGraph.RoleSet> roleSets = new ConcurrentHashMap<>(4);
+
+        Membership(String[] roleIds) {
+            this.roleIds = roleIds;
+        }
+    }
+}
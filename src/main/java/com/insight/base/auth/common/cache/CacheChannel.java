@@ -0,0 +1,99 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.RoundTripCounter;
+import com.insight.utils.Util;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/2
+ * @remark 进程内缓存失效通知通道(Redis发布/订阅)
+ */
+@Component
+public class CacheChannel implements MessageListener {
+    private static final String SEPARATOR = "|";
+    private final Map<String, Consumer<String>> handlers = new ConcurrentHashMap<>();
+    private final StringRedisTemplate template;
+    private final RedisMessageListenerContainer container;
+
+    /**
+     * 当前节点ID,用于忽略本节点发出的通知
+     */
+    private final String nodeId = Util.uuid();
+
+    /**
+     * 构造方法
+     *
+     * @param template  StringRedisTemplate
+     * @param container RedisMessageListenerContainer
+     */
+    public CacheChannel(StringRedisTemplate template, RedisMessageListenerContainer container) {
+        this.template = template;
+        this.container = container;
+    }
+
+    /**
+     * 订阅频道
+     *
+     * @param channel 频道名称
+     * @param handler 通知处理方法,参数为通知内容
+     */
+    public void subscribe(String channel, Consumer<String> handler) {
+        handlers.put(channel, handler);
+        container.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * 向其他节点发布通知
+     *
+     * @param channel 频道名称
+     * @param content 通知内容
+     */
+    public void publish(String channel, String content) {
+        RoundTripCounter.increment();
+        template.convertAndSend(channel, message(content));
+    }
+
+    /**
+     * 构造通知消息(供管道批量发布使用)
+     *
+     * @param content 通知内容
+     * @return 通知消息
+     */
+    public String message(String content) {
+        return nodeId + SEPARATOR + content;
+    }
+
+    /**
+     * 处理订阅消息
+     *
+     * @param message 消息
+     * @param pattern 订阅模式
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        Consumer<String> handler = handlers.get(channel);
+        if (handler == null) {
+            return;
+        }
+
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(SEPARATOR);
+        if (index < 0 || body.substring(0, index).equals(nodeId)) {
+            return;
+        }
+
+        handler.accept(body.substring(index + 1));
+    }
+}
@@ -0,0 +1,147 @@
+package com.insight.base.auth.common.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/2
+ * @remark 进程内缓存(限定容量及有效时间)
+ */
+public class LocalCache<V> {
+    private final Map<String, Entry<V>> map;
+
+    /**
+     * 最大缓存条目数
+     */
+    private final int maxSize;
+
+    /**
+     * 默认有效时间(毫秒)
+     */
+    private final long life;
+
+    /**
+     * 构造方法
+     *
+     * @param maxSize 最大缓存条目数
+     * @param life    默认有效时间(毫秒)
+     */
+    public LocalCache(int maxSize, long life) {
+        this.map = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+        this.maxSize = maxSize;
+        this.life = life;
+    }
+
+    /**
+     * 读取缓存数据
+     *
+     * @param key 键
+     * @return 缓存数据,不存在或已过期时返回null
+     */
+    public V get(String key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.deadline < System.currentTimeMillis()) {
+            map.remove(key, entry);
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    /**
+     * 以默认有效时间写入缓存
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void put(String key, V value) {
+        put(key, value, System.currentTimeMillis() + life);
+    }
+
+    /**
+     * 写入缓存,有效期不超过默认有效时间
+     *
+     * @param key      键
+     * @param value    值
+     * @param deadline 过期时间(毫秒时间戳)
+     */
+    public void put(String key, V value, long deadline) {
+        if (value == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long time = Math.min(deadline, now + life);
+        if (time <= now) {
+            map.remove(key);
+            return;
+        }
+
+        if (map.size() >= maxSize) {
+            evict(now);
+        }
+
+        map.put(key, new Entry<>(value, time));
+    }
+
+    /**
+     * 移除缓存数据
+     *
+     * @param key 键
+     */
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * 当前缓存条目数
+     *
+     * @return 缓存条目数
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 淘汰缓存:先清理已过期条目,仍超出容量时按哈希顺序(近似随机)淘汰十分之一
+     *
+     * @param now 当前时间
+     */
+    private void evict(long now) {
+        map.entrySet().removeIf(i -> i.getValue().deadline < now);
+
+        int count = map.size() - maxSize + maxSize / 10;
+        Iterator<String> iterator = map.keySet().iterator();
+        while (count > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            count--;
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long deadline;
+
+        Entry(V value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.dto.NavDto;
+
+import java.util.*;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/25
+ * @remark 应用导航树(不可变,已排序)
+ * <p>
+ * 导航树对全部用户相同,每个应用只构建一次并按父级ID(空值在前)和序号预先排序。
+ * 请求时仅以用户有权限的模块裁剪,返回的NavDto为共享实例,调用方不得修改。
+ */
+final class NavigatorTree {
+    private final NavDto[] navs;
+    private final int[] parents;
+    private final Map<String, Integer> index;
+
+    /**
+     * 导航下标,按父级ID(空值在前)和序号排序
+     */
+    private final int[] order;
+
+    /**
+     * 构造方法
+     *
+     * @param list 应用的全部导航
+     */
+    NavigatorTree(List<NavDto> list) {
+        navs = new NavDto[list.size()];
+        index = new HashMap<>(navs.length * 2);
+        for (int i = 0; i < navs.length; i++) {
+            navs[i] = copy(list.get(i));
+            index.put(navs[i].getId(), i);
+        }
+
+        parents = new int[navs.length];
+        for (int i = 0; i < navs.length; i++) {
+            parents[i] = indexOf(navs[i].getParentId());
+        }
+
+        List<Integer> sorted = new ArrayList<>(navs.length);
+        for (int i = 0; i < navs.length; i++) {
+            sorted.add(i);
+        }
+
+        Comparator<Integer> byParent = Comparator.comparing(i -> navs[i].getParentId(), Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+        sorted.sort(byParent.thenComparing(i -> navs[i].getIndex(), Comparator.nullsFirst(Comparator.<Integer>naturalOrder())));
+        order = sorted.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * 导航数量
+     *
+     * @return 导航数量
+     */
+    int size() {
+        return navs.length;
+    }
+
+    /**
+     * 导航下标
+     *
+     * @param navId 导航ID
+     * @return 下标,不存在时返回-1
+     */
+    int indexOf(String navId) {
+        Integer value = navId == null ? null : index.get(navId);
+
+        return value == null ? -1 : value;
+    }
+
+    /**
+     * 标记模块及其上级导航
+     *
+     * @param included 导航标记
+     * @param module   模块下标
+     */
+    void include(boolean[] included, int module) {
+        included[module] = true;
+        if (parents[module] >= 0) {
+            included[parents[module]] = true;
+        }
+    }
+
+    /**
+     * 按预排序的顺序输出已标记的导航
+     *
+     * @param included 导航标记
+     * @return 导航集合(共享实例)
+     */
+    List<NavDto> prune(boolean[] included) {
+        List<NavDto> list = new ArrayList<>();
+        for (int i : order) {
+            if (included[i]) {
+                list.add(navs[i]);
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * 复制导航数据,使树中的实例不受加载方修改影响
+     *
+     * @param nav 导航数据
+     * @return 导航数据
+     */
+    private static NavDto copy(NavDto nav) {
+        NavDto dto = new NavDto();
+        dto.setId(nav.getId());
+        dto.setParentId(nav.getParentId());
+        dto.setType(nav.getType());
+        dto.setIndex(nav.getIndex());
+        dto.setName(nav.getName());
+        dto.setModuleInfo(nav.getModuleInfo());
+
+        return dto;
+    }
+}
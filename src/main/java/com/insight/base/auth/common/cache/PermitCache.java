@@ -0,0 +1,368 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.RoundTripCounter;
+import com.insight.base.auth.common.mapper.AuthMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/18
+ * @remark 用户授权码缓存(进程内 + Redis)
+ * <p>
+ * 以(应用ID, 租户ID, 用户ID)为键缓存用户的有效授权码集合,仅在角色、权限或成员关系变更时由应用授权图重新计算。
+ * Redis中以Hash存储: Permit:{代数}:{用户ID}, 字段为"应用ID:租户ID:授权图版本", 值为逗号分隔的授权码。
+ * 授权图重建后版本变化,该应用的缓存数据即不再被读取。
+ * 单个用户变更时使该用户的缓存失效;角色权限变更影响大量用户,则递增代数(Version:Permit)使全部缓存失效,
+ * 旧代数的数据由Redis过期时间回收。
+ */
+@Component
+public class PermitCache {
+    private static final String CHANNEL = "Channel:Permit";
+    private static final String VERSION_KEY = "Version:Permit";
+    private static final String ALL = "*";
+    private static final int PARITY_QUEUE_SIZE = 100;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final LocalCache<Map<String, List<String>>> cache;
+    private final AuthMapper mapper;
+    private final AuthGraphCache graphCache;
+    private final StringRedisTemplate template;
+    private final CacheChannel channel;
+    private final Counter mismatches;
+    private final long redisLife;
+    private final double parityRate;
+
+    /**
+     * 抽样校验的线程池(单线程,有界队列,队列已满时放弃本次校验)
+     */
+    private final ThreadPoolExecutor parityChecker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(PARITY_QUEUE_SIZE), r -> {
+        Thread thread = new Thread(r, "permit-parity");
+        thread.setDaemon(true);
+
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+    private volatile long generation;
+
+    /**
+     * 构造方法
+     *
+     * @param mapper     AuthMapper
+     * @param graphCache AuthGraphCache
+     * @param template   StringRedisTemplate
+     * @param channel    CacheChannel
+     * @param registry   MeterRegistry
+     * @param size       最大缓存用户数
+     * @param life       进程内缓存时间(毫秒)
+     * @param redisLife  Redis中的缓存时间(小时)
+     * @param parityRate 以SQL结果校验缓存数据的抽样比例
+     */
+    public PermitCache(AuthMapper mapper, AuthGraphCache graphCache, StringRedisTemplate template, CacheChannel channel, MeterRegistry registry,
+                       @Value("${insight.auth.permit-cache.size:10000}") int size,
+                       @Value("${insight.auth.permit-cache.life:600000}") long life,
+                       @Value("${insight.auth.permit-cache.redis-life:24}") long redisLife,
+                       @Value("${insight.auth.permit-cache.parity-rate:0.01}") double parityRate) {
+        this.cache = new LocalCache<>(size, life);
+        this.mapper = mapper;
+        this.graphCache = graphCache;
+        this.template = template;
+        this.channel = channel;
+        this.mismatches = registry.counter("auth.permit.parity.mismatches");
+        this.redisLife = redisLife;
+        this.parityRate = parityRate;
+        this.generation = readGeneration();
+
+        channel.subscribe(CHANNEL, this::receive);
+    }
+
+    /**
+     * 获取用户授权码:依次读取进程内缓存、Redis缓存,均未缓存时由应用授权图计算
+     *
+     * @param appId    应用ID
+     * @param tenantId 租户ID
+     * @param userId   用户ID
+     * @return 授权码集合,应用不存在时返回空集合
+     */
+    public List<String> get(String appId, String tenantId, String userId) {
+        AuthGraph graph = graphCache.get(appId);
+        if (graph == null) {
+            return Collections.emptyList();
+        }
+
+        String field = field(appId, tenantId, graph.getVersion());
+        Map<String, List<String>> permits = cache.get(userId);
+        List<String> list = permits == null ? null : permits.get(field);
+        if (list != null) {
+            checkParity(appId, tenantId, userId, list);
+            return list;
+        }
+
+        long gen = generation;
+        String key = key(gen, userId);
+        RoundTripCounter.increment();
+        Object value = template.opsForHash().get(key, field);
+        if (value != null) {
+            list = split((String) value);
+            checkParity(appId, tenantId, userId, list);
+        } else {
+            list = Collections.unmodifiableList(graphCache.getAuthInfos(appId, tenantId, userId));
+            String codes = String.join(",", list);
+
+            RoundTripCounter.increment();
+            template.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.hSet(key, field, codes);
+                conn.expire(key, TimeUnit.HOURS.toSeconds(redisLife));
+
+                return null;
+            });
+        }
+
+        if (gen == generation) {
+            cache(userId, field, list);
+        }
+
+        return list;
+    }
+
+    /**
+     * 批量获取用户授权码:进程内缓存未命中的以一次管道操作读取Redis,仍未命中的由应用授权图计算后以一次管道操作写入
+     *
+     * @param keys 以(应用ID, 租户ID, 用户ID)表示的用户集合,应用须已加载授权图
+     * @return 与keys顺序一致的授权码集合
+     */
+    public List<List<String>> getAll(List<String[]> keys) {
+        int size = keys.size();
+        List<List<String>> results = new ArrayList<>(Collections.nCopies(size, null));
+        String[] fields = new String[size];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String[] key = keys.get(i);
+            fields[i] = field(key[0], key[1], graphCache.get(key[0]).getVersion());
+            Map<String, List<String>> permits = cache.get(key[2]);
+            List<String> list = permits == null ? null : permits.get(fields[i]);
+            if (list == null) {
+                misses.add(i);
+            } else {
+                results.set(i, list);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return results;
+        }
+
+        long gen = generation;
+        RoundTripCounter.increment();
+        List<Object> values = template.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            misses.forEach(i -> conn.hGet(key(gen, keys.get(i)[2]), fields[i]));
+
+            return null;
+        });
+
+        Map<Integer, String> writes = new HashMap<>();
+        for (int j = 0; j < misses.size(); j++) {
+            int i = misses.get(j);
+            String[] key = keys.get(i);
+            Object value = values.get(j);
+            List<String> list;
+            if (value != null) {
+                list = split((String) value);
+            } else {
+                list = Collections.unmodifiableList(graphCache.getAuthInfos(key[0], key[1], key[2]));
+                writes.put(i, String.join(",", list));
+            }
+
+            results.set(i, list);
+            if (gen == generation) {
+                cache(key[2], fields[i], list);
+            }
+        }
+
+        if (!writes.isEmpty()) {
+            RoundTripCounter.increment();
+            template.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                writes.forEach((i, codes) -> {
+                    String key = key(gen, keys.get(i)[2]);
+                    conn.hSet(key, fields[i], codes);
+                    conn.expire(key, TimeUnit.HOURS.toSeconds(redisLife));
+                });
+
+                return null;
+            });
+        }
+
+        return results;
+    }
+
+    /**
+     * 使全部节点中指定用户的授权码缓存失效(用户的角色或成员关系变更时调用)
+     *
+     * @param userId 用户ID
+     */
+    public void invalidate(String userId) {
+        RoundTripCounter.increment();
+        template.delete(key(generation, userId));
+        cache.remove(userId);
+        channel.publish(CHANNEL, userId);
+    }
+
+    /**
+     * 使全部节点的全部授权码缓存失效(角色权限或功能授权码变更时调用)
+     */
+    public void invalidateAll() {
+        RoundTripCounter.increment();
+        Long value = template.opsForValue().increment(VERSION_KEY);
+        generation = value == null ? readGeneration() : value;
+        cache.clear();
+        channel.publish(CHANNEL, ALL);
+    }
+
+    /**
+     * 定时比对缓存代数,以防丢失失效通知
+     */
+    @Scheduled(fixedDelayString = "${insight.auth.permit-cache.check-interval:60000}")
+    public void checkGeneration() {
+        long value = readGeneration();
+        if (value != generation) {
+            logger.info("授权码缓存代数已变更: {} -> {}", generation, value);
+            generation = value;
+            cache.clear();
+        }
+    }
+
+    /**
+     * 写入进程内缓存
+     *
+     * @param userId 用户ID
+     * @param field  字段名
+     * @param list   授权码集合
+     */
+    private void cache(String userId, String field, List<String> list) {
+        Map<String, List<String>> permits = cache.get(userId);
+        if (permits == null) {
+            permits = new ConcurrentHashMap<>(4);
+            cache.put(userId, permits);
+        }
+
+        permits.put(field, list);
+    }
+
+    /**
+     * 处理失效通知
+     *
+     * @param content 用户ID或"*"(全部)
+     */
+    private void receive(String content) {
+        if (ALL.equals(content)) {
+            generation = readGeneration();
+            cache.clear();
+        } else {
+            cache.remove(content);
+        }
+    }
+
+    /**
+     * 抽样以SQL结果校验缓存数据,不一致时记录日志并使该用户的缓存失效
+     *
+     * @param appId    应用ID
+     * @param tenantId 租户ID
+     * @param userId   用户ID
+     * @param cached   缓存的授权码集合
+     */
+    private void checkParity(String appId, String tenantId, String userId, List<String> cached) {
+        if (parityRate <= 0 || ThreadLocalRandom.current().nextDouble() >= parityRate) {
+            return;
+        }
+
+        parityChecker.execute(() -> {
+            try {
+                Set<String> expected = new HashSet<>(mapper.getAuthInfos(appId, tenantId, userId));
+                if (expected.equals(new HashSet<>(cached))) {
+                    return;
+                }
+
+                mismatches.increment();
+                logger.warn("用户[{}]在应用[{}]租户[{}]的缓存授权码与数据库不一致,已使缓存失效", userId, appId, tenantId);
+                invalidate(userId);
+            } catch (Exception ex) {
+                logger.error("校验授权码缓存失败", ex);
+            }
+        });
+    }
+
+    /**
+     * 停止抽样校验线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        parityChecker.shutdownNow();
+    }
+
+    /**
+     * 读取当前缓存代数
+     *
+     * @return 缓存代数
+     */
+    private long readGeneration() {
+        RoundTripCounter.increment();
+        String value = template.opsForValue().get(VERSION_KEY);
+
+        return value == null || value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+
+    /**
+     * Redis缓存Key
+     *
+     * @param gen    缓存代数
+     * @param userId 用户ID
+     * @return Key
+     */
+    private static String key(long gen, String userId) {
+        return "Permit:" + gen + ":" + userId;
+    }
+
+    /**
+     * Hash字段名
+     *
+     * @param appId    应用ID
+     * @param tenantId 租户ID
+     * @param version  授权图版本
+     * @return 字段名
+     */
+    private static String field(String appId, String tenantId, long version) {
+        return appId + ":" + (tenantId == null ? "" : tenantId) + ":" + version;
+    }
+
+    /**
+     * 拆分逗号分隔的授权码
+     *
+     * @param codes 逗号分隔的授权码
+     * @return 授权码集合
+     */
+    private static List<String> split(String codes) {
+        if (codes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(codes.split(",")));
+    }
+}
@@ -0,0 +1,78 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.Token;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/2
+ * @remark 令牌进程内缓存
+ */
+@Component
+public class TokenCache {
+    public static final String CHANNEL = "Channel:Token";
+    private final LocalCache<Token> cache;
+    private final CacheChannel channel;
+
+    /**
+     * 构造方法
+     *
+     * @param channel   CacheChannel
+     * @param size      最大缓存令牌数
+     * @param staleness 最大陈旧时间(毫秒),失效通知丢失时令牌在本节点的最长存活时间
+     */
+    public TokenCache(CacheChannel channel, @Value("${insight.auth.token-cache.size:10000}") int size,
+                      @Value("${insight.auth.token-cache.staleness:5000}") long staleness) {
+        this.cache = new LocalCache<>(size, staleness);
+        this.channel = channel;
+
+        channel.subscribe(CHANNEL, cache::remove);
+    }
+
+    /**
+     * 读取缓存令牌
+     *
+     * @param tokenId 令牌ID
+     * @return 令牌(共享实例,不得修改,需修改时使用Token.copy),未缓存时返回null
+     */
+    public Token get(String tokenId) {
+        return cache.get(tokenId);
+    }
+
+    /**
+     * 缓存令牌,缓存时间不超过令牌失效时间
+     *
+     * @param tokenId 令牌ID
+     * @param token   令牌
+     */
+    public void put(String tokenId, Token token) {
+        LocalDateTime failureTime = token.getFailureTime();
+        long deadline = failureTime == null ? Long.MAX_VALUE : failureTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        cache.put(tokenId, token, deadline);
+    }
+
+    /**
+     * 构造令牌失效通知消息(供管道批量发布到CHANNEL)
+     *
+     * @param tokenId 令牌ID
+     * @return 通知消息
+     */
+    public String message(String tokenId) {
+        return channel.message(tokenId);
+    }
+
+    /**
+     * 使全部节点的缓存令牌失效
+     *
+     * @param tokenId 令牌ID
+     */
+    public void invalidate(String tokenId) {
+        cache.remove(tokenId);
+        channel.publish(CHANNEL, tokenId);
+    }
+}
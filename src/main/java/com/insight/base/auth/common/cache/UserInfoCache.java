@@ -0,0 +1,143 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.RoundTripCounter;
+import com.insight.base.auth.common.dto.UserInfoDto;
+import com.insight.utils.Json;
+import com.insight.utils.Redis;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/13
+ * @remark 用户信息缓存(进程内 + Redis)
+ * <p>
+ * 缓存已处理好头像地址的用户信息,用户数据变更时失效,令牌发放时无需再读取用户Hash并转换。
+ * 用户数据由其他服务修改时不会通知本服务,故Redis缓存时间与进程内缓存时间相同,姓名、头像等变更最多在两个缓存周期后生效。
+ */
+@Component
+public class UserInfoCache {
+    private static final String CHANNEL = "Channel:UserInfo";
+    private static final String PREFIX = "UserInfo:";
+    private final LocalCache<UserInfoDto> cache;
+    private final CacheChannel channel;
+
+    /**
+     * Redis中的缓存时间(秒)
+     */
+    private final int redisLife;
+
+    /**
+     * 构造方法
+     *
+     * @param channel CacheChannel
+     * @param size    最大缓存用户数
+     * @param life    缓存时间(毫秒),进程内缓存和Redis缓存相同
+     */
+    public UserInfoCache(CacheChannel channel, @Value("${insight.auth.user-cache.size:10000}") int size,
+                         @Value("${insight.auth.user-cache.life:600000}") long life) {
+        this.cache = new LocalCache<>(size, life);
+        this.channel = channel;
+        this.redisLife = (int) TimeUnit.MILLISECONDS.toSeconds(life);
+
+        channel.subscribe(CHANNEL, cache::remove);
+    }
+
+    /**
+     * Redis缓存Key
+     *
+     * @param userId 用户ID
+     * @return Key
+     */
+    private static String key(String userId) {
+        return PREFIX + userId;
+    }
+
+    /**
+     * 获取用户信息:依次读取进程内缓存、Redis缓存,均未缓存时根据用户数据重新生成
+     *
+     * @param userId 用户ID
+     * @return 用户信息
+     */
+    public UserInfoDto get(String userId) {
+        UserInfoDto info = cache.get(userId);
+        if (info != null) {
+            return info;
+        }
+
+        RoundTripCounter.increment();
+        String json = Redis.get(key(userId));
+        info = json == null || json.isEmpty() ? null : Json.toBean(json, UserInfoDto.class);
+        if (info == null) {
+            info = build(userId);
+            RoundTripCounter.increment();
+            Redis.set(key(userId), Json.toJson(info), redisLife, TimeUnit.SECONDS);
+        }
+
+        cache.put(userId, info);
+        return info;
+    }
+
+    /**
+     * 使全部节点的用户信息缓存失效
+     *
+     * @param userId 用户ID
+     */
+    public void invalidate(String userId) {
+        RoundTripCounter.increment();
+        Redis.deleteKey(key(userId));
+        cache.remove(userId);
+        channel.publish(CHANNEL, userId);
+    }
+
+    /**
+     * 复制用户信息并设置租户ID
+     *
+     * @param info     缓存的用户信息
+     * @param tenantId 租户ID
+     * @return 用户信息
+     */
+    public static UserInfoDto copy(UserInfoDto info, String tenantId) {
+        UserInfoDto dto = new UserInfoDto();
+        dto.setId(info.getId());
+        dto.setTenantId(tenantId);
+        dto.setCode(info.getCode());
+        dto.setName(info.getName());
+        dto.setAccount(info.getAccount());
+        dto.setMobile(info.getMobile());
+        dto.setEmail(info.getEmail());
+        dto.setHeadImg(info.getHeadImg());
+        dto.setBuiltin(info.getBuiltin());
+        dto.setCreatedTime(info.getCreatedTime());
+
+        return dto;
+    }
+
+    /**
+     * 根据用户数据生成用户信息
+     *
+     * @param userId 用户ID
+     * @return 用户信息
+     */
+    private UserInfoDto build(String userId) {
+        RoundTripCounter.increment();
+        Map<Object, Object> user = Redis.getEntity("User:" + userId);
+        UserInfoDto info = Json.clone(user, UserInfoDto.class);
+        RoundTripCounter.increment();
+        String host = Redis.get("Config:FileHost");
+        String imgUrl = info.getHeadImg();
+        if (imgUrl == null || imgUrl.isEmpty()) {
+            RoundTripCounter.increment();
+            String defaultHead = Redis.get("Config:DefaultHead");
+            info.setHeadImg(host + defaultHead);
+        } else if (!imgUrl.contains("http://") && !imgUrl.contains("https://")) {
+            info.setHeadImg(host + imgUrl);
+        }
+
+        info.setTenantId(null);
+        return info;
+    }
+}
@@ -0,0 +1,168 @@
+package com.insight.base.auth.common.client;
+
+import java.util.Arrays;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/3
+ * @remark 熔断器(线程安全)
+ * <p>
+ * 以最近若干次调用的结果计算失败率,达到阈值后熔断,熔断期间的调用直接失败;
+ * 熔断时间结束后只放行一次试探调用,成功则恢复,失败则重新熔断。
+ */
+public final class CircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+
+        /**
+         * 正常
+         */
+        CLOSED,
+
+        /**
+         * 熔断
+         */
+        OPEN,
+
+        /**
+         * 试探
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * 最近调用的结果(true表示失败)
+     */
+    private final boolean[] outcomes;
+
+    /**
+     * 失败率阈值(百分比)
+     */
+    private final int threshold;
+
+    /**
+     * 熔断时间(毫秒)
+     */
+    private final long openTime;
+    private State state = State.CLOSED;
+    private int index;
+    private int count;
+    private int failures;
+    private long openedTime;
+    private boolean probing;
+
+    /**
+     * 构造方法
+     *
+     * @param window    计算失败率的调用次数,调用次数不足时不熔断
+     * @param threshold 失败率阈值(百分比)
+     * @param openTime  熔断时间(毫秒)
+     */
+    public CircuitBreaker(int window, int threshold, long openTime) {
+        if (window <= 0 || threshold <= 0 || threshold > 100 || openTime <= 0) {
+            throw new IllegalArgumentException("熔断器参数无效");
+        }
+
+        this.outcomes = new boolean[window];
+        this.threshold = threshold;
+        this.openTime = openTime;
+    }
+
+    /**
+     * 是否放行本次调用,放行后须调用onSuccess或onFailure
+     *
+     * @return 是否放行
+     */
+    public synchronized boolean allow() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedTime < openTime) {
+                    return false;
+                }
+
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+
+                probing = true;
+                return true;
+        }
+    }
+
+    /**
+     * 记录调用成功
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            return;
+        }
+
+        record(false);
+    }
+
+    /**
+     * 记录调用失败
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+
+        record(true);
+        if (count == outcomes.length && failures * 100 >= threshold * count) {
+            open();
+        }
+    }
+
+    /**
+     * 获取熔断器状态
+     *
+     * @return 状态
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (count == outcomes.length) {
+            if (outcomes[index]) {
+                failures--;
+            }
+        } else {
+            count++;
+        }
+
+        outcomes[index] = failed;
+        if (failed) {
+            failures++;
+        }
+
+        index = (index + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedTime = System.currentTimeMillis();
+        probing = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        probing = false;
+        index = 0;
+        count = 0;
+        failures = 0;
+        Arrays.fill(outcomes, false);
+    }
+}
@@ -1,6 +1,5 @@
 package com.insight.base.auth.common.client;
 
-import com.insight.base.auth.common.config.FeignClientConfig;
 import com.insight.base.auth.common.dto.NormalMessage;
 import com.insight.utils.pojo.Reply;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -14,7 +13,7 @@ import org.springframework.web.bind.annotation.RequestBody;
  * @date 2019-08-31
  * @remark 消息中心Feign客户端
  */
-@FeignClient(name = "common-message", configuration = FeignClientConfig.class)
+@FeignClient(name = "common-message")
 public interface MessageClient {
 
     /**
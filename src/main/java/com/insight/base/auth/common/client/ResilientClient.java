@@ -0,0 +1,184 @@
+package com.insight.base.auth.common.client;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/3
+ * @remark 带隔离和熔断的Feign客户端
+ * <p>
+ * 按请求方法和路径前缀匹配调用策略,每个策略有独立的超时时间、并发上限(信号量隔离)和熔断器。
+ * 并发已满或熔断期间不发出请求,直接返回503响应;连接异常和5xx响应计为失败。
+ */
+public class ResilientClient implements Client {
+    private final Client delegate;
+    private final List<Policy> policies;
+    private final Policy defaultPolicy;
+    private final MeterRegistry registry;
+
+    /**
+     * 构造方法
+     *
+     * @param delegate      实际发送请求的客户端
+     * @param policies      调用策略,按顺序匹配
+     * @param defaultPolicy 未匹配任何策略时使用的策略
+     * @param registry      MeterRegistry
+     */
+    public ResilientClient(Client delegate, List<Policy> policies, Policy defaultPolicy, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.policies = new ArrayList<>(policies);
+        this.defaultPolicy = defaultPolicy;
+        this.registry = registry;
+
+        this.policies.forEach(this::register);
+        register(defaultPolicy);
+    }
+
+    /**
+     * 发送请求
+     *
+     * @param request Request
+     * @param options 默认超时设置
+     * @return Response
+     * @throws IOException 连接或读取失败
+     */
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        Policy policy = match(request);
+        if (!policy.bulkhead.tryAcquire()) {
+            registry.counter("auth.feign.rejections", "policy", policy.name, "reason", "bulkhead").increment();
+            return unavailable(request, "服务繁忙,请稍后重试");
+        }
+
+        try {
+            if (!policy.breaker.allow()) {
+                registry.counter("auth.feign.rejections", "policy", policy.name, "reason", "circuit").increment();
+                return unavailable(request, "服务暂不可用,请稍后重试");
+            }
+
+            Response response;
+            try {
+                response = delegate.execute(request, policy.options(options));
+            } catch (IOException | RuntimeException ex) {
+                policy.breaker.onFailure();
+                registry.counter("auth.feign.failures", "policy", policy.name).increment();
+                throw ex;
+            }
+
+            if (response.status() >= 500) {
+                policy.breaker.onFailure();
+                registry.counter("auth.feign.failures", "policy", policy.name).increment();
+            } else {
+                policy.breaker.onSuccess();
+            }
+
+            return response;
+        } finally {
+            policy.bulkhead.release();
+        }
+    }
+
+    /**
+     * 匹配调用策略
+     *
+     * @param request Request
+     * @return 调用策略
+     */
+    private Policy match(Request request) {
+        String path = URI.create(request.url()).getPath();
+        for (Policy policy : policies) {
+            if (policy.method.equalsIgnoreCase(request.method()) && path.startsWith(policy.path)) {
+                return policy;
+            }
+        }
+
+        return defaultPolicy;
+    }
+
+    /**
+     * 注册熔断状态指标
+     *
+     * @param policy 调用策略
+     */
+    private void register(Policy policy) {
+        Gauge.builder("auth.feign.circuit.open", policy.breaker, i -> i.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .tag("policy", policy.name).register(registry);
+    }
+
+    /**
+     * 构造快速失败的503响应
+     *
+     * @param request Request
+     * @param reason  原因
+     * @return Response
+     */
+    private static Response unavailable(Request request, String reason) {
+        return Response.builder().status(503).reason(reason).request(request)
+                .headers(Collections.<String, Collection<String>>emptyMap())
+                .body(reason, StandardCharsets.UTF_8).build();
+    }
+
+    /**
+     * 调用策略
+     */
+    public static final class Policy {
+        private final String name;
+        private final String method;
+        private final String path;
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final Semaphore bulkhead;
+        private final CircuitBreaker breaker;
+
+        /**
+         * 构造方法
+         *
+         * @param name           策略名称
+         * @param method         HTTP请求方法
+         * @param path           路径前缀
+         * @param connectTimeout 连接超时(毫秒),0表示使用默认设置
+         * @param readTimeout    读取超时(毫秒),0表示使用默认设置
+         * @param maxConcurrent  并发上限
+         * @param breaker        熔断器
+         */
+        public Policy(String name, String method, String path, int connectTimeout, int readTimeout, int maxConcurrent, CircuitBreaker breaker) {
+            this.name = name;
+            this.method = method;
+            this.path = path;
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+            this.bulkhead = new Semaphore(maxConcurrent);
+            this.breaker = breaker;
+        }
+
+        /**
+         * 本策略的超时设置
+         *
+         * @param options 默认超时设置
+         * @return 超时设置
+         */
+        private Request.Options options(Request.Options options) {
+            if (connectTimeout <= 0 && readTimeout <= 0) {
+                return options;
+            }
+
+            int connect = connectTimeout > 0 ? connectTimeout : options.connectTimeoutMillis();
+            int read = readTimeout > 0 ? readTimeout : options.readTimeoutMillis();
+
+            return new Request.Options(connect, read, options.isFollowRedirects());
+        }
+    }
+}
@@ -1,22 +1,42 @@
 package com.insight.base.auth.common.config;
 
+import com.insight.base.auth.common.client.CircuitBreaker;
+import com.insight.base.auth.common.client.ResilientClient;
+import feign.Client;
+import feign.Request;
 import feign.RequestInterceptor;
 import feign.RequestTemplate;
+import feign.httpclient.ApacheHttpClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.HttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
-import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author 宣炳刚
  * @date 2019-09-09
  * @remark Feign配置类
+ * <p>
+ * 请求经连接池化的Apache HttpClient发送(连接池由feign.httpclient.*配置),
+ * 各接口按调用策略设置超时时间、并发上限和熔断器,消息中心故障时快速失败,不占满本服务的请求线程。
  */
 @Configuration
 public class FeignClientConfig implements RequestInterceptor {
-    private static final String REGULAR = "fingerprint|requestId|loginInfo";
+
+    /**
+     * 需要向下游传递的请求头
+     */
+    private static final List<String> HEADERS = Arrays.asList("fingerprint", "requestId", "loginInfo");
 
     /**
      * 应用配置
@@ -31,13 +51,60 @@ public class FeignClientConfig implements RequestInterceptor {
         }
 
         HttpServletRequest request = requestAttributes.getRequest();
-        Enumeration<String> headers = request.getHeaderNames();
-        while (headers.hasMoreElements()) {
-            String name = headers.nextElement();
-            if (name.matches(REGULAR)) {
-                String values = request.getHeader(name);
-                template.header(name, values);
+        for (String name : HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                template.header(name, value);
             }
         }
     }
+
+    /**
+     * 默认超时设置
+     *
+     * @param connectTimeout 连接超时(毫秒)
+     * @param readTimeout    读取超时(毫秒)
+     * @return Request.Options
+     */
+    @Bean
+    public Request.Options feignOptions(@Value("${insight.auth.feign.connect-timeout:1000}") int connectTimeout,
+                                        @Value("${insight.auth.feign.read-timeout:5000}") int readTimeout) {
+        return new Request.Options(connectTimeout, readTimeout);
+    }
+
+    /**
+     * 带负载均衡、连接池、隔离和熔断的Feign客户端
+     *
+     * @param cachingFactory CachingSpringLoadBalancerFactory
+     * @param clientFactory  SpringClientFactory
+     * @param httpClient     连接池化的HttpClient
+     * @param registry       MeterRegistry
+     * @param sendTimeout    发送消息读取超时(毫秒)
+     * @param verifyTimeout  验证短信验证码读取超时(毫秒)
+     * @param maxConcurrent  每个接口的并发上限
+     * @param window         计算失败率的调用次数
+     * @param threshold      熔断失败率阈值(百分比)
+     * @param openTime       熔断时间(毫秒)
+     * @return Client
+     */
+    @Bean
+    public Client feignClient(CachingSpringLoadBalancerFactory cachingFactory, SpringClientFactory clientFactory, HttpClient httpClient,
+                              MeterRegistry registry,
+                              @Value("${insight.auth.message.send-timeout:3000}") int sendTimeout,
+                              @Value("${insight.auth.message.verify-timeout:1000}") int verifyTimeout,
+                              @Value("${insight.auth.feign.max-concurrent:20}") int maxConcurrent,
+                              @Value("${insight.auth.feign.circuit.window:20}") int window,
+                              @Value("${insight.auth.feign.circuit.threshold:50}") int threshold,
+                              @Value("${insight.auth.feign.circuit.open-time:10000}") long openTime) {
+        List<ResilientClient.Policy> policies = Arrays.asList(
+                new ResilientClient.Policy("message.send", "POST", "/common/message/v1.0/messages", 0, sendTimeout, maxConcurrent,
+                        new CircuitBreaker(window, threshold, openTime)),
+                new ResilientClient.Policy("message.verify", "GET", "/common/message/v1.0/codes/", 0, verifyTimeout, maxConcurrent,
+                        new CircuitBreaker(window, threshold, openTime)));
+        ResilientClient.Policy defaultPolicy = new ResilientClient.Policy("default", "", "", 0, 0, maxConcurrent,
+                new CircuitBreaker(window, threshold, openTime));
+        Client client = new ResilientClient(new ApacheHttpClient(httpClient), policies, defaultPolicy, registry);
+
+        return new LoadBalancerFeignClient(client, cachingFactory, clientFactory);
+    }
 }
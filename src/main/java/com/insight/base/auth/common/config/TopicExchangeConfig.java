@@ -1,8 +1,10 @@
 package com.insight.base.auth.common.config;
 
+import com.insight.base.auth.common.PermitEventListener;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -43,4 +45,80 @@ public class TopicExchangeConfig {
     public Binding userBinding(){
         return BindingBuilder.bind(userQueue()).to(exchange()).with("auth.addUser");
     }
+
+    /**
+     * 权限变更事件队列,处理失败的消息经默认交换机转入死信队列
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue permitQueue() {
+        return QueueBuilder.durable(PermitEventListener.QUEUE)
+                .withArgument("x-dead-letter-exchange", "")
+                .withArgument("x-dead-letter-routing-key", PermitEventListener.DEAD_LETTER_QUEUE).build();
+    }
+
+    /**
+     * 权限变更事件死信队列
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue permitDeadLetterQueue() {
+        return new Queue(PermitEventListener.DEAD_LETTER_QUEUE);
+    }
+
+    /**
+     * 角色变更绑定
+     * @return Binding
+     */
+    @Bean
+    public Binding roleBinding() {
+        return BindingBuilder.bind(permitQueue()).to(exchange()).with("auth.role.*");
+    }
+
+    /**
+     * 角色权限变更绑定
+     * @return Binding
+     */
+    @Bean
+    public Binding rolePermitBinding() {
+        return BindingBuilder.bind(permitQueue()).to(exchange()).with("auth.rolePermit.*");
+    }
+
+    /**
+     * 角色成员变更绑定
+     * @return Binding
+     */
+    @Bean
+    public Binding roleMemberBinding() {
+        return BindingBuilder.bind(permitQueue()).to(exchange()).with("auth.roleMember.*");
+    }
+
+    /**
+     * 用户组成员变更绑定
+     * @return Binding
+     */
+    @Bean
+    public Binding groupMemberBinding() {
+        return BindingBuilder.bind(permitQueue()).to(exchange()).with("auth.groupMember.*");
+    }
+
+    /**
+     * 职位成员变更绑定
+     * @return Binding
+     */
+    @Bean
+    public Binding postMemberBinding() {
+        return BindingBuilder.bind(permitQueue()).to(exchange()).with("auth.postMember.*");
+    }
+
+    /**
+     * 功能变更绑定
+     * @return Binding
+     */
+    @Bean
+    public Binding functionBinding() {
+        return BindingBuilder.bind(permitQueue()).to(exchange()).with("auth.function.*");
+    }
 }
@@ -0,0 +1,62 @@
+package com.insight.base.auth.common.dto;
+
+import com.insight.utils.Json;
+
+import javax.validation.constraints.NotEmpty;
+import java.io.Serializable;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/1
+ * @remark 限流查询DTO
+ */
+public class LimitQuery implements Serializable {
+    private static final long serialVersionUID = -1L;
+
+    /**
+     * 接口HTTP请求方法
+     */
+    @NotEmpty(message = "请求方法不能为空")
+    private String method;
+
+    /**
+     * 接口URL(与接口配置一致)
+     */
+    @NotEmpty(message = "接口URL不能为空")
+    private String url;
+
+    /**
+     * 限流对象(设备指纹或用户ID)
+     */
+    @NotEmpty(message = "限流对象不能为空")
+    private String key;
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJson(this);
+    }
+}
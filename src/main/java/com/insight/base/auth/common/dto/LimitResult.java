@@ -0,0 +1,67 @@
+package com.insight.base.auth.common.dto;
+
+import com.insight.utils.Json;
+
+import java.io.Serializable;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/1
+ * @remark 限流结果DTO
+ */
+public class LimitResult implements Serializable {
+    private static final long serialVersionUID = -1L;
+
+    /**
+     * 是否允许调用
+     */
+    private Boolean allowed;
+
+    /**
+     * 距可再次调用的毫秒数,允许调用时为0
+     */
+    private Long retryAfter;
+
+    /**
+     * 限流消息
+     */
+    private String message;
+
+    public LimitResult() {
+    }
+
+    public LimitResult(Boolean allowed, Long retryAfter, String message) {
+        this.allowed = allowed;
+        this.retryAfter = retryAfter;
+        this.message = message;
+    }
+
+    public Boolean getAllowed() {
+        return allowed;
+    }
+
+    public void setAllowed(Boolean allowed) {
+        this.allowed = allowed;
+    }
+
+    public Long getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Long retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJson(this);
+    }
+}
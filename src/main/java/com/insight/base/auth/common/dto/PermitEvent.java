@@ -0,0 +1,88 @@
+package com.insight.base.auth.common.dto;
+
+import com.insight.utils.Json;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/27
+ * @remark 权限变更事件DTO
+ * <p>
+ * 路由键: auth.role.*(角色变更), auth.rolePermit.*(角色权限变更), auth.roleMember.*(角色成员变更),
+ * auth.groupMember.*(用户组成员变更), auth.postMember.*(职位成员变更), auth.function.*(功能变更)
+ */
+public class PermitEvent implements Serializable {
+    private static final long serialVersionUID = -1L;
+
+    /**
+     * 应用ID,为空时按角色或功能查询
+     */
+    private String appId;
+
+    /**
+     * 角色ID
+     */
+    private String roleId;
+
+    /**
+     * 功能ID
+     */
+    private String functionId;
+
+    /**
+     * 成员类型:1.用户;2.用户组;3.职位
+     */
+    private Integer memberType;
+
+    /**
+     * 变更的成员ID集合(用户组或职位成员变更时为用户ID)
+     */
+    private List<String> memberIds;
+
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(String appId) {
+        this.appId = appId;
+    }
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    public void setRoleId(String roleId) {
+        this.roleId = roleId;
+    }
+
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    public void setFunctionId(String functionId) {
+        this.functionId = functionId;
+    }
+
+    public Integer getMemberType() {
+        return memberType;
+    }
+
+    public void setMemberType(Integer memberType) {
+        this.memberType = memberType;
+    }
+
+    public List<String> getMemberIds() {
+        return memberIds;
+    }
+
+    public void setMemberIds(List<String> memberIds) {
+        this.memberIds = memberIds;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJson(this);
+    }
+}
@@ -0,0 +1,84 @@
+package com.insight.base.auth.common.dto;
+
+import com.insight.utils.Json;
+
+import java.io.Serializable;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/28
+ * @remark 权限查询DTO,以令牌ID或(用户ID, 应用ID, 租户ID)确定用户
+ */
+public class PermitQuery implements Serializable {
+    private static final long serialVersionUID = -1L;
+
+    /**
+     * 令牌ID,不为空时忽略用户ID、应用ID和租户ID
+     */
+    private String tokenId;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 应用ID
+     */
+    private String appId;
+
+    /**
+     * 租户ID
+     */
+    private String tenantId;
+
+    /**
+     * 授权码
+     */
+    private String authCode;
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public void setTokenId(String tokenId) {
+        this.tokenId = tokenId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(String appId) {
+        this.appId = appId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getAuthCode() {
+        return authCode;
+    }
+
+    public void setAuthCode(String authCode) {
+        this.authCode = authCode;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJson(this);
+    }
+}
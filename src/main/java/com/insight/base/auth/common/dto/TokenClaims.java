@@ -0,0 +1,110 @@
+package com.insight.base.auth.common.dto;
+
+import com.insight.utils.Json;
+
+import java.io.Serializable;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/9
+ * @remark 签名令牌声明数据DTO
+ */
+public class TokenClaims implements Serializable {
+    private static final long serialVersionUID = -1L;
+
+    /**
+     * 令牌ID
+     */
+    private String id;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 应用ID
+     */
+    private String appId;
+
+    /**
+     * 租户ID
+     */
+    private String tenantId;
+
+    /**
+     * 令牌密钥
+     */
+    private String secret;
+
+    /**
+     * 过期时间(毫秒时间戳)
+     */
+    private Long expire;
+
+    /**
+     * 授权码摘要:MD5(按字典序排列并以逗号连接的授权码)
+     */
+    private String permits;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(String appId) {
+        this.appId = appId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    public Long getExpire() {
+        return expire;
+    }
+
+    public void setExpire(Long expire) {
+        this.expire = expire;
+    }
+
+    public String getPermits() {
+        return permits;
+    }
+
+    public void setPermits(String permits) {
+        this.permits = permits;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJson(this);
+    }
+}
@@ -0,0 +1,71 @@
+package com.insight.base.auth.common.entity;
+
+import com.insight.utils.Json;
+
+import java.io.Serializable;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/23
+ * @remark 功能授权码实体类
+ */
+public class FunctionAuthCode implements Serializable {
+    private static final long serialVersionUID = -1L;
+
+    /**
+     * 功能ID
+     */
+    private String functionId;
+
+    /**
+     * 接口授权码
+     */
+    private String authCode;
+
+    /**
+     * 导航(末级模块)ID
+     */
+    private String navId;
+
+    /**
+     * 应用ID
+     */
+    private String appId;
+
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    public void setFunctionId(String functionId) {
+        this.functionId = functionId;
+    }
+
+    public String getAuthCode() {
+        return authCode;
+    }
+
+    public void setAuthCode(String authCode) {
+        this.authCode = authCode;
+    }
+
+    public String getNavId() {
+        return navId;
+    }
+
+    public void setNavId(String navId) {
+        this.navId = navId;
+    }
+
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(String appId) {
+        this.appId = appId;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJson(this);
+    }
+}
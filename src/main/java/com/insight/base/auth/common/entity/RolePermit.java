@@ -0,0 +1,71 @@
+package com.insight.base.auth.common.entity;
+
+import com.insight.utils.Json;
+
+import java.io.Serializable;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/23
+ * @remark 角色功能权限实体类
+ */
+public class RolePermit implements Serializable {
+    private static final long serialVersionUID = -1L;
+
+    /**
+     * 角色ID
+     */
+    private String roleId;
+
+    /**
+     * 角色所属租户ID
+     */
+    private String tenantId;
+
+    /**
+     * 功能ID
+     */
+    private String functionId;
+
+    /**
+     * 授权类型:0.拒绝;1.允许
+     */
+    private Boolean permit;
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    public void setRoleId(String roleId) {
+        this.roleId = roleId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    public void setFunctionId(String functionId) {
+        this.functionId = functionId;
+    }
+
+    public Boolean getPermit() {
+        return permit;
+    }
+
+    public void setPermit(Boolean permit) {
+        this.permit = permit;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJson(this);
+    }
+}
@@ -2,11 +2,16 @@ package com.insight.base.auth.common.mapper;
 
 import com.insight.base.auth.common.dto.FuncDto;
 import com.insight.base.auth.common.dto.NavDto;
+import com.insight.base.auth.common.entity.FunctionAuthCode;
+import com.insight.base.auth.common.entity.RolePermit;
 import com.insight.base.auth.common.entity.TenantApp;
 import com.insight.utils.common.JsonTypeHandler;
 import com.insight.utils.pojo.*;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -19,13 +24,47 @@ import java.util.Map;
 public interface AuthMapper {
 
     /**
-     * 根据登录账号查询用户数据
+     * 根据登录标识查询用户数据,按标识类型查询对应的唯一索引,账号可为任意格式故同时查询账号索引;
+     * 类型不确定时逐一查询手机号、E-mail和微信UnionID索引
      *
-     * @param key 关键词(ID/账号/手机号/E-mail/微信unionId)
+     * @param type 标识类型:1.ID;2.手机号;3.E-mail;其他.类型不确定
+     * @param key  登录标识
      * @return 用户实体
      */
-    @Select("select * from ibu_user WHERE id = #{key} or account = #{key} or mobile = #{key} or email = #{key} or union_id = #{key} limit 1;")
-    User getUser(String key);
+    @Select("<script><choose>" +
+            "<when test = 'type == 1'>select * from ibu_user where id = #{key} union all </when>" +
+            "<when test = 'type == 2'>select * from ibu_user where mobile = #{key} union all </when>" +
+            "<when test = 'type == 3'>select * from ibu_user where email = #{key} union all </when>" +
+            "<otherwise>select * from ibu_user where mobile = #{key} union all select * from ibu_user where email = #{key} union all " +
+            "select * from ibu_user where union_id = #{key} union all </otherwise></choose>" +
+            "select * from ibu_user where account = #{key} limit 1;</script>")
+    User getUser(@Param("type") int type, @Param("key") String key);
+
+    /**
+     * 获取用户数量
+     *
+     * @return 用户数量
+     */
+    @Select("select count(*) from ibu_user;")
+    long getUserCount();
+
+    /**
+     * 流式读取全部用户的登录标识(ID、账号、手机号、E-mail、UnionID)
+     *
+     * @param handler 逐行处理用户数据
+     */
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @Select("select id, account, mobile, email, union_id from ibu_user;")
+    void streamUsers(ResultHandler<User> handler);
+
+    /**
+     * 获取指定时间之后创建或修改的用户的登录标识
+     *
+     * @param since 起始时间
+     * @return 用户集合
+     */
+    @Select("select id, account, mobile, email, union_id from ibu_user where updated_time >= #{since};")
+    List<User> getUsersChangedSince(LocalDateTime since);
 
     /**
      * 获取用户的租户ID集合
@@ -45,6 +84,15 @@ public interface AuthMapper {
     @Select("SELECT * FROM ibs_application WHERE id = #{appId};")
     Application getApp(String appId);
 
+    /**
+     * 查询指定ID的应用的访问令牌模式
+     *
+     * @param appId 应用ID
+     * @return 访问令牌模式:0.不透明令牌;1.HMAC签名令牌
+     */
+    @Select("SELECT token_mode FROM ibs_application WHERE id = #{appId};")
+    Integer getTokenMode(String appId);
+
     /**
      * 查询指定应用ID的应用信息
      *
@@ -93,11 +141,11 @@ public interface AuthMapper {
     @Results({@Result(property = "moduleInfo", column = "module_info", javaType = ModuleInfo.class, typeHandler = JsonTypeHandler.class)})
     @Select("select * from (select distinct g.id, g.parent_id, g.`type`, g.`index`, g.`name`, g.module_info from ibs_navigator g " +
             "join ibs_navigator m on m.parent_id = g.id join ibs_function f on f.nav_id = m.id " +
-            "join (select distinct a.function_id from ibr_role_permit a join ibv_user_roles r on r.role_id = a.role_id " +
+            "join (select distinct a.function_id from ibr_role_permit a join ibr_user_role r on r.role_id = a.role_id " +
             "where user_id = #{userId} and (tenant_id is null or tenant_id = #{tenantId}) " +
             "group by a.function_id having min(a.permit)> 0) a on a.function_id = f.id where g.app_id = #{appId} union " +
             "select m.id, m.parent_id, m.`type`, m.`index`, m.`name`, m.module_info from ibs_navigator m join ibs_function f on f.nav_id = m.id " +
-            "join (select distinct a.function_id from ibr_role_permit a join ibv_user_roles r on r.role_id = a.role_id " +
+            "join (select distinct a.function_id from ibr_role_permit a join ibr_user_role r on r.role_id = a.role_id " +
             "where user_id = #{userId} and (tenant_id is null or tenant_id = #{tenantId}) group by a.function_id " +
             "having min(a.permit)> 0) a on a.function_id = f.id where m.app_id = #{appId}) l order by l.parent_id, l.`index`;")
     List<NavDto> getNavigators(@Param("appId") String appId, @Param("tenantId") String tenantId, @Param("userId") String userId);
@@ -112,9 +160,9 @@ public interface AuthMapper {
      */
     @Results({@Result(property = "funcInfo", column = "func_info", javaType = FuncInfo.class, typeHandler = JsonTypeHandler.class)})
     @Select("select f.id, f.nav_id, f.`type`, f.`index`, f.`name`, f.auth_codes, f.func_info, a.permit from ibs_function f " +
-            "left join (select a.function_id, min(a.permit) as permit from ibr_role_permit a join ibv_user_roles r " +
-            "on r.role_id = a.role_id and r.user_id = #{userId} and (r.tenant_id is null or r.tenant_id = #{tenantId}) " +
-            "group by a.function_id) a on a.function_id = f.id where f.nav_id = #{moduleId} order by f.`index`;")
+            "left join (select a.function_id, min(a.permit) as permit from ibs_function m join ibr_role_permit a on a.function_id = m.id " +
+            "join ibr_user_role r on r.role_id = a.role_id and r.user_id = #{userId} and (r.tenant_id is null or r.tenant_id = #{tenantId}) " +
+            "where m.nav_id = #{moduleId} group by a.function_id) a on a.function_id = f.id where f.nav_id = #{moduleId} order by f.`index`;")
     List<FuncDto> getModuleFunctions(@Param("moduleId") String moduleId, @Param("tenantId") String tenantId, @Param("userId") String userId);
 
     /**
@@ -125,13 +173,11 @@ public interface AuthMapper {
      * @param tenantId 租户ID
      * @return 授权信息集合
      */
-    @Select("<script>select substring_index(substring_index(f.auth_codes, ',', h.help_topic_id + 1), ',', - 1) as auth_code " +
-            "from ibs_function f join ibs_navigator n on n.id = f.nav_id and n.app_id = #{appId} " +
-            "join ibr_role_permit p on p.function_id = f.id join ibv_user_roles r on r.role_id = p.role_id and r.user_id = #{userId} " +
+    @Select("<script>select c.auth_code from ibs_function_auth_code c " +
+            "join ibr_role_permit p on p.function_id = c.function_id join ibr_user_role r on r.role_id = p.role_id and r.user_id = #{userId} " +
             "<if test = 'tenantId != null'>and r.tenant_id = #{tenantId} </if>" +
             "<if test = 'tenantId == null'>and r.tenant_id is null </if>" +
-            "join mysql.help_topic h on h.help_topic_id &lt; (length(f.auth_codes) - length(replace(f.auth_codes, ',', '')) + 1)" +
-            "group by n.app_id, f.nav_id, auth_code having min(p.permit) > 0</script>")
+            "where c.app_id = #{appId} group by c.nav_id, c.auth_code having min(p.permit) > 0</script>")
     List<String> getAuthInfos(@Param("appId") String appId, @Param("tenantId") String tenantId, @Param("userId") String userId);
 
     /**
@@ -145,4 +191,117 @@ public interface AuthMapper {
             "join ibt_tenant_app a on a.tenant_id = t.id and a.app_id = #{appId} " +
             "join ibt_tenant_user u on u.tenant_id = t.id and u.user_id = #{userId};")
     List<MemberDto> getTenants(@Param("appId") String appId, @Param("userId") String userId);
+
+    /**
+     * 获取全部应用ID
+     *
+     * @return 应用ID集合
+     */
+    @Select("select id from ibs_application;")
+    List<String> getAppIds();
+
+    /**
+     * 获取应用的全部导航
+     *
+     * @param appId 应用ID
+     * @return 导航集合
+     */
+    @Results({@Result(property = "moduleInfo", column = "module_info", javaType = ModuleInfo.class, typeHandler = JsonTypeHandler.class)})
+    @Select("select id, parent_id, `type`, `index`, `name`, module_info from ibs_navigator where app_id = #{appId};")
+    List<NavDto> getAppNavigators(String appId);
+
+    /**
+     * 获取应用的全部功能
+     *
+     * @param appId 应用ID
+     * @return 功能集合
+     */
+    @Results({@Result(property = "funcInfo", column = "func_info", javaType = FuncInfo.class, typeHandler = JsonTypeHandler.class)})
+    @Select("select f.id, f.nav_id, f.`type`, f.`index`, f.`name`, f.auth_codes, f.func_info from ibs_function f " +
+            "join ibs_navigator n on n.id = f.nav_id and n.app_id = #{appId};")
+    List<FuncDto> getAppFunctions(String appId);
+
+    /**
+     * 获取应用的全部功能授权码
+     *
+     * @param appId 应用ID
+     * @return 功能授权码集合
+     */
+    @Select("select function_id, auth_code, nav_id, app_id from ibs_function_auth_code where app_id = #{appId};")
+    List<FunctionAuthCode> getAppAuthCodes(String appId);
+
+    /**
+     * 获取应用功能的全部角色权限
+     *
+     * @param appId 应用ID
+     * @return 角色功能权限集合
+     */
+    @Select("select p.role_id, r.tenant_id, p.function_id, p.permit from ibr_role_permit p join ibr_role r on r.id = p.role_id " +
+            "join ibs_function f on f.id = p.function_id join ibs_navigator n on n.id = f.nav_id and n.app_id = #{appId};")
+    List<RolePermit> getAppPermits(String appId);
+
+    /**
+     * 获取用户的角色ID集合(直接授予、用户组及职位)
+     *
+     * @param userId 用户ID
+     * @return 角色ID集合
+     */
+    @Select("select distinct role_id from ibr_user_role where user_id = #{userId};")
+    List<String> getUserRoleIds(String userId);
+
+    /**
+     * 获取角色所属应用ID
+     *
+     * @param roleId 角色ID
+     * @return 应用ID
+     */
+    @Select("select app_id from ibr_role where id = #{roleId};")
+    String getRoleAppId(String roleId);
+
+    /**
+     * 获取功能所属应用ID
+     *
+     * @param functionId 功能ID
+     * @return 应用ID
+     */
+    @Select("select n.app_id from ibs_function f join ibs_navigator n on n.id = f.nav_id where f.id = #{functionId};")
+    String getFunctionAppId(String functionId);
+
+    /**
+     * 获取角色的成员用户ID集合(直接授予、用户组及职位)
+     *
+     * @param roleId 角色ID
+     * @return 用户ID集合
+     */
+    @Select("select distinct user_id from ibr_user_role where role_id = #{roleId};")
+    List<String> getRoleUserIds(String roleId);
+
+    /**
+     * 获取对功能设置了权限的角色的成员用户ID集合
+     *
+     * @param functionId 功能ID
+     * @return 用户ID集合
+     */
+    @Select("select distinct u.user_id from ibr_role_permit p join ibr_user_role u on u.role_id = p.role_id where p.function_id = #{functionId};")
+    List<String> getFunctionUserIds(String functionId);
+
+    /**
+     * 获取用户组的成员用户ID集合
+     *
+     * @param groupIds 用户组ID集合
+     * @return 用户ID集合
+     */
+    @Select("<script>select distinct user_id from ibu_group_member where group_id in " +
+            "<foreach collection = 'list' item = 'item' open = '(' separator = ',' close = ')'>#{item}</foreach>;</script>")
+    List<String> getGroupUserIds(List<String> groupIds);
+
+    /**
+     * 获取职位的成员用户ID集合
+     *
+     * @param postIds 职位ID集合
+     * @return 用户ID集合
+     */
+    @Select("<script>select distinct user_id from ibo_organize_member where post_id in " +
+            "<foreach collection = 'list' item = 'item' open = '(' separator = ',' close = ')'>#{item}</foreach>;</script>")
+    List<String> getPostUserIds(List<String> postIds);
 }
@@ -71,6 +71,14 @@ public interface ConfigMapper {
     @Select("select method, url, auth_code, limit_gap, limit_cycle, limit_max, message, need_token, is_verify, is_limit, is_log_result from ibi_interface;")
     List<InterfaceDto> loadConfigs();
 
+    /**
+     * 获取启用限流的接口配置
+     *
+     * @return 接口配置表
+     */
+    @Select("select method, url, limit_gap, limit_cycle, limit_max, message from ibi_interface where is_limit = 1;")
+    List<InterfaceConfig> getLimitConfigs();
+
     /**
      * 获取操作日志列表
      *
@@ -103,4 +111,82 @@ public interface ConfigMapper {
             "(#{id}, #{tenantId}, #{type}, #{business}, #{businessId}, #{content, typeHandler = com.insight.utils.common.JsonTypeHandler}, " +
             "#{creator}, #{creatorId}, #{createdTime});")
     void addLog(Log log);
+
+    /**
+     * 删除功能授权码
+     *
+     * @param functionId 功能ID,为空时删除全部功能授权码
+     */
+    @Delete("<script>delete from ibs_function_auth_code<if test = 'functionId != null'> where function_id = #{functionId}</if></script>")
+    void deleteFunctionAuthCodes(@Param("functionId") String functionId);
+
+    /**
+     * 拆分功能的授权码写入功能授权码表
+     *
+     * @param functionId 功能ID,为空时拆分全部功能
+     * @return 写入记录数
+     */
+    @Insert("<script>insert ibs_function_auth_code(function_id, auth_code, nav_id, app_id) " +
+            "select distinct f.id, substring_index(substring_index(f.auth_codes, ',', h.help_topic_id + 1), ',', - 1), f.nav_id, n.app_id " +
+            "from ibs_function f join ibs_navigator n on n.id = f.nav_id " +
+            "join mysql.help_topic h on h.help_topic_id &lt; (length(f.auth_codes) - length(replace(f.auth_codes, ',', '')) + 1)" +
+            "<if test = 'functionId != null'> where f.id = #{functionId}</if></script>")
+    int addFunctionAuthCodes(@Param("functionId") String functionId);
+
+    /**
+     * 删除用户的全部用户角色记录
+     *
+     * @param userIds 用户ID集合
+     */
+    @Delete("<script>delete from ibr_user_role where user_id in <foreach collection = 'list' item = 'item' open = '(' separator = ',' close = ')'>#{item}</foreach></script>")
+    void deleteUserRoles(List<String> userIds);
+
+    /**
+     * 由角色成员展开写入用户的用户角色记录
+     *
+     * @param userIds 用户ID集合
+     * @return 写入记录数
+     */
+    @Insert("<script>insert ibr_user_role(user_id, tenant_id, role_id, member_type, member_id) " +
+            "select m.member_id, r.tenant_id, m.role_id, 1, m.member_id from ibr_role r " +
+            "join ibr_role_member m on m.role_id = r.id and m.`type` = 1 where m.member_id in <foreach collection = 'list' item = 'item' open = '(' separator = ',' close = ')'>#{item}</foreach> union " +
+            "select g.user_id, r.tenant_id, m.role_id, 2, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 2 " +
+            "join ibu_group_member g on g.group_id = m.member_id where g.user_id in <foreach collection = 'list' item = 'item' open = '(' separator = ',' close = ')'>#{item}</foreach> union " +
+            "select p.user_id, r.tenant_id, m.role_id, 3, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 3 " +
+            "join ibo_organize_member p on p.post_id = m.member_id join ibo_organize o on o.id = p.post_id where p.user_id in <foreach collection = 'list' item = 'item' open = '(' separator = ',' close = ')'>#{item}</foreach></script>")
+    int addUserRoles(List<String> userIds);
+
+    /**
+     * 删除角色的全部用户角色记录
+     *
+     * @param roleId 角色ID
+     */
+    @Delete("delete from ibr_user_role where role_id = #{roleId};")
+    void deleteRoleUserRoles(String roleId);
+
+    /**
+     * 由角色成员展开写入角色的用户角色记录
+     *
+     * @param roleId 角色ID
+     * @return 写入记录数
+     */
+    @Insert("insert ibr_user_role(user_id, tenant_id, role_id, member_type, member_id) " +
+            "select m.member_id, r.tenant_id, m.role_id, 1, m.member_id from ibr_role r " +
+            "join ibr_role_member m on m.role_id = r.id and m.`type` = 1 where r.id = #{roleId} union " +
+            "select g.user_id, r.tenant_id, m.role_id, 2, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 2 " +
+            "join ibu_group_member g on g.group_id = m.member_id where r.id = #{roleId} union " +
+            "select p.user_id, r.tenant_id, m.role_id, 3, m.member_id from ibr_role r join ibr_role_member m on m.role_id = r.id and m.`type` = 3 " +
+            "join ibo_organize_member p on p.post_id = m.member_id join ibo_organize o on o.id = p.post_id where r.id = #{roleId};")
+    int addRoleUserRoles(String roleId);
+
+    /**
+     * 获取用户角色表与角色成员展开结果(ibv_user_roles)不一致的用户ID
+     *
+     * @return 用户ID集合
+     */
+    @Select("select distinct d.user_id from (select v.user_id from ibv_user_roles v left join ibr_user_role u " +
+            "on u.user_id = v.user_id and u.role_id = v.role_id and u.tenant_id <=> v.tenant_id where u.user_id is null union all " +
+            "select u.user_id from ibr_user_role u left join ibv_user_roles v " +
+            "on v.user_id = u.user_id and v.role_id = u.role_id and v.tenant_id <=> u.tenant_id where v.user_id is null) d;")
+    List<String> getUserRoleDrifts();
 }
@@ -143,4 +143,58 @@ public class ManageController {
     public Reply loadConfigs() {
         return service.loadConfigs();
     }
+
+    /**
+     * 重新加载应用策略
+     *
+     * @param id 应用ID
+     * @return Reply
+     */
+    @PutMapping("/v1.0/apps/{id}/policy")
+    public Reply reloadAppPolicy(@PathVariable String id) {
+        return service.reloadAppPolicy(id);
+    }
+
+    /**
+     * 使用户授权码缓存失效
+     *
+     * @param userId 用户ID,为空时使全部用户的授权码缓存失效
+     * @return Reply
+     */
+    @DeleteMapping("/v1.0/permits")
+    public Reply clearPermits(@RequestParam(required = false) String userId) {
+        return service.clearPermits(userId);
+    }
+
+    /**
+     * 解除用户的登录失败锁定
+     *
+     * @param id 用户ID
+     * @return Reply
+     */
+    @DeleteMapping("/v1.0/users/{id}/lockout")
+    public Reply unlockUser(@PathVariable String id) {
+        return service.unlockUser(id);
+    }
+
+    /**
+     * 同步功能授权码(功能新增、编辑或删除后调用)
+     *
+     * @param id 功能ID
+     * @return Reply
+     */
+    @PutMapping("/v1.0/functions/{id}/codes")
+    public Reply syncAuthCodes(@PathVariable String id) {
+        return service.syncAuthCodes(id);
+    }
+
+    /**
+     * 重建全部功能授权码
+     *
+     * @return Reply
+     */
+    @GetMapping("/v1.0/functions/codes/load")
+    public Reply loadAuthCodes() {
+        return service.syncAuthCodes(null);
+    }
 }
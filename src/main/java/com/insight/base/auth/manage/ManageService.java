@@ -81,4 +81,36 @@ public interface ManageService {
      * @return Reply
      */
     Reply loadConfigs();
+
+    /**
+     * 重新加载应用策略(全部节点)
+     *
+     * @param appId 应用ID
+     * @return Reply
+     */
+    Reply reloadAppPolicy(String appId);
+
+    /**
+     * 使用户授权码缓存失效(全部节点)
+     *
+     * @param userId 用户ID,为空时使全部用户的授权码缓存失效
+     * @return Reply
+     */
+    Reply clearPermits(String userId);
+
+    /**
+     * 解除用户的登录失败锁定并清除失败记录(全部节点)
+     *
+     * @param userId 用户ID
+     * @return Reply
+     */
+    Reply unlockUser(String userId);
+
+    /**
+     * 同步功能授权码
+     *
+     * @param functionId 功能ID,为空时重建全部功能授权码
+     * @return Reply
+     */
+    Reply syncAuthCodes(String functionId);
 }
@@ -2,11 +2,19 @@ package com.insight.base.auth.manage;
 
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
+import com.insight.base.auth.common.FailureCounter;
+import com.insight.base.auth.common.RateLimiter;
+import com.insight.base.auth.common.cache.AppPolicyCache;
+import com.insight.base.auth.common.cache.AuthGraphCache;
+import com.insight.base.auth.common.cache.PermitCache;
 import com.insight.base.auth.common.entity.InterfaceConfig;
 import com.insight.base.auth.common.mapper.ConfigMapper;
 import com.insight.utils.*;
 import com.insight.utils.pojo.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -21,14 +29,30 @@ import java.util.concurrent.Executors;
 @Service
 public class ManageServiceImpl implements ManageService {
     private final ConfigMapper mapper;
+    private final AppPolicyCache appPolicyCache;
+    private final PermitCache permitCache;
+    private final AuthGraphCache graphCache;
+    private final RateLimiter rateLimiter;
+    private final FailureCounter failureCounter;
 
     /**
      * 构造函数
      *
-     * @param mapper ConfigMapper
+     * @param mapper         ConfigMapper
+     * @param appPolicyCache AppPolicyCache
+     * @param permitCache    PermitCache
+     * @param graphCache     AuthGraphCache
+     * @param rateLimiter    RateLimiter
+     * @param failureCounter FailureCounter
      */
-    public ManageServiceImpl(ConfigMapper mapper) {
+    public ManageServiceImpl(ConfigMapper mapper, AppPolicyCache appPolicyCache, PermitCache permitCache, AuthGraphCache graphCache,
+                             RateLimiter rateLimiter, FailureCounter failureCounter) {
         this.mapper = mapper;
+        this.appPolicyCache = appPolicyCache;
+        this.permitCache = permitCache;
+        this.graphCache = graphCache;
+        this.rateLimiter = rateLimiter;
+        this.failureCounter = failureCounter;
     }
 
     /**
@@ -185,10 +209,78 @@ public class ManageServiceImpl implements ManageService {
 
         String json = Json.toJson(configs);
         Redis.set("Config:Interface", json);
+        rateLimiter.bump();
 
         return ReplyHelper.success();
     }
 
+    /**
+     * 重新加载应用策略(全部节点)
+     *
+     * @param appId 应用ID
+     * @return Reply
+     */
+    @Override
+    public Reply reloadAppPolicy(String appId) {
+        appPolicyCache.bump(appId);
+
+        return ReplyHelper.success();
+    }
+
+    /**
+     * 使用户授权码缓存失效(全部节点)
+     *
+     * @param userId 用户ID,为空时使全部用户的授权码缓存失效
+     * @return Reply
+     */
+    @Override
+    public Reply clearPermits(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            graphCache.invalidateUsers();
+            graphCache.reloadAll();
+            permitCache.invalidateAll();
+        } else {
+            graphCache.invalidateUser(userId);
+            permitCache.invalidate(userId);
+        }
+
+        return ReplyHelper.success();
+    }
+
+    /**
+     * 解除用户的登录失败锁定并清除失败记录(全部节点)
+     *
+     * @param userId 用户ID
+     * @return Reply
+     */
+    @Override
+    public Reply unlockUser(String userId) {
+        failureCounter.unlock(userId);
+
+        return ReplyHelper.success();
+    }
+
+    /**
+     * 同步功能授权码,在同一事务中删除并重新拆分,读取方不会看到中间状态;提交后重建功能所属应用的授权图
+     *
+     * @param functionId 功能ID,为空时重建全部功能授权码
+     * @return Reply
+     */
+    @Override
+    @Transactional
+    public Reply syncAuthCodes(String functionId) {
+        mapper.deleteFunctionAuthCodes(functionId);
+        int count = mapper.addFunctionAuthCodes(functionId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                graphCache.reloadByFunction(functionId);
+            }
+        });
+
+        return ReplyHelper.success(count);
+    }
+
     /**
      * 记录操作日志
      *
@@ -1,6 +1,9 @@
 package com.insight.base.auth.service;
 
+import com.insight.base.auth.common.TokenSigner;
+import com.insight.base.auth.common.dto.LimitQuery;
 import com.insight.base.auth.common.dto.LoginDto;
+import com.insight.base.auth.common.dto.PermitQuery;
 import com.insight.utils.Json;
 import com.insight.utils.ReplyHelper;
 import com.insight.utils.pojo.AccessToken;
@@ -9,6 +12,7 @@ import com.insight.utils.pojo.Reply;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.util.List;
 
 /**
  * @author 宣炳刚
@@ -53,6 +57,17 @@ public class AuthController {
         return service.getCode(account, type);
     }
 
+    /**
+     * 获取验证码短信的发送状态
+     *
+     * @param code 获取验证码时返回的Code
+     * @return Reply
+     */
+    @GetMapping("/v1.0/tokens/codes/{code}/status")
+    public Reply getSmsStatus(@PathVariable String code) {
+        return service.getSmsStatus(code);
+    }
+
     /**
      * 获取Token
      *
@@ -121,13 +136,49 @@ public class AuthController {
      * 获取用户授权码
      *
      * @param loginInfo 用户信息
+     * @param token     访问令牌字符串
      * @return Reply
      */
     @GetMapping("/v1.0/tokens/permits")
-    public Reply getPermits(@RequestHeader("loginInfo") String loginInfo) {
+    public Reply getPermits(@RequestHeader("loginInfo") String loginInfo, @RequestHeader(value = "Authorization", required = false) String token) {
         LoginInfo info = Json.toBeanFromBase64(loginInfo, LoginInfo.class);
+        String tokenId = null;
+        if (token != null && TokenSigner.isSigned(token)) {
+            tokenId = TokenSigner.readId(token);
+        } else if (token != null && !token.isEmpty()) {
+            AccessToken accessToken = Json.toAccessToken(token);
+            tokenId = accessToken == null ? null : accessToken.getId();
+        }
 
-        return service.getPermits(info);
+        return service.getPermits(info, tokenId);
+    }
+
+    /**
+     * 批量验证用户是否拥有授权码
+     *
+     * @param loginInfo 调用方用户信息
+     * @param queries   权限查询集合
+     * @return Reply
+     */
+    @PostMapping("/v1.0/tokens/permits")
+    public Reply checkPermits(@RequestHeader("loginInfo") String loginInfo, @RequestBody List<PermitQuery> queries) {
+        LoginInfo info = Json.toBeanFromBase64(loginInfo, LoginInfo.class);
+        if (info == null) {
+            return ReplyHelper.invalidToken();
+        }
+
+        return service.checkPermits(info, queries);
+    }
+
+    /**
+     * 获取接口调用许可,按接口配置的最小间隔和周期限额限流
+     *
+     * @param query 限流查询
+     * @return Reply
+     */
+    @PostMapping("/v1.0/limits")
+    public Reply checkLimit(@Valid @RequestBody LimitQuery query) {
+        return service.checkLimit(query);
     }
 
     /**
@@ -155,6 +206,10 @@ public class AuthController {
      */
     @DeleteMapping("/v1.0/tokens")
     public Reply deleteToken(@RequestHeader(value = "Authorization") String token) {
+        if (TokenSigner.isSigned(token)) {
+            return service.deleteToken(TokenSigner.readId(token));
+        }
+
         AccessToken accessToken = Json.toAccessToken(token);
 
         return service.deleteToken(accessToken.getId());
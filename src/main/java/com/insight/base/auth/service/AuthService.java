@@ -1,10 +1,14 @@
 package com.insight.base.auth.service;
 
+import com.insight.base.auth.common.dto.LimitQuery;
 import com.insight.base.auth.common.dto.LoginDto;
+import com.insight.base.auth.common.dto.PermitQuery;
 import com.insight.utils.pojo.AccessToken;
 import com.insight.utils.pojo.LoginInfo;
 import com.insight.utils.pojo.Reply;
 
+import java.util.List;
+
 /**
  * @author 宣炳刚
  * @date 2017/12/18
@@ -29,6 +33,14 @@ public interface AuthService {
      */
     Reply getCode(String account, int type);
 
+    /**
+     * 获取验证码短信的发送状态
+     *
+     * @param code 获取验证码时返回的Code
+     * @return Reply
+     */
+    Reply getSmsStatus(String code);
+
     /**
      * 获取Token
      *
@@ -56,10 +68,28 @@ public interface AuthService {
     /**
      * 获取用户授权码
      *
-     * @param info 用户登录信息
+     * @param info    用户登录信息
+     * @param tokenId 令牌ID,可为空
+     * @return Reply
+     */
+    Reply getPermits(LoginInfo info, String tokenId);
+
+    /**
+     * 批量验证用户是否拥有授权码
+     *
+     * @param info    调用方登录信息
+     * @param queries 权限查询集合
+     * @return Reply
+     */
+    Reply checkPermits(LoginInfo info, List<PermitQuery> queries);
+
+    /**
+     * 获取接口调用许可
+     *
+     * @param query 限流查询
      * @return Reply
      */
-    Reply getPermits(LoginInfo info);
+    Reply checkLimit(LimitQuery query);
 
     /**
      * 刷新访问令牌过期时间
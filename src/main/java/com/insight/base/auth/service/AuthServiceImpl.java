@@ -1,10 +1,19 @@
 package com.insight.base.auth.service;
 
 import com.insight.base.auth.common.Core;
+import com.insight.base.auth.common.FailureCounter;
+import com.insight.base.auth.common.LoginVerifier;
+import com.insight.base.auth.common.RateLimiter;
+import com.insight.base.auth.common.SmsDispatcher;
 import com.insight.base.auth.common.Token;
+import com.insight.base.auth.common.cache.AuthGraphCache;
+import com.insight.base.auth.common.cache.PermitCache;
 import com.insight.base.auth.common.dto.FuncDto;
+import com.insight.base.auth.common.dto.LimitQuery;
+import com.insight.base.auth.common.dto.LimitResult;
 import com.insight.base.auth.common.dto.LoginDto;
 import com.insight.base.auth.common.dto.NavDto;
+import com.insight.base.auth.common.dto.PermitQuery;
 import com.insight.base.auth.common.dto.TokenDto;
 import com.insight.base.auth.common.mapper.AuthMapper;
 import com.insight.utils.*;
@@ -17,7 +26,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -27,19 +37,36 @@ import java.util.concurrent.TimeUnit;
  */
 @Service
 public class AuthServiceImpl implements AuthService {
+    private static final int MAX_PERMIT_QUERIES = 1000;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final AuthMapper mapper;
     private final Core core;
+    private final LoginVerifier verifier;
+    private final FailureCounter failureCounter;
+    private final RateLimiter rateLimiter;
+    private final PermitCache permitCache;
+    private final AuthGraphCache graphCache;
 
     /**
      * 构造函数
      *
-     * @param mapper AuthMapper
-     * @param core   Core
+     * @param mapper         AuthMapper
+     * @param core           Core
+     * @param verifier       LoginVerifier
+     * @param failureCounter FailureCounter
+     * @param rateLimiter    RateLimiter
+     * @param permitCache    PermitCache
+     * @param graphCache     AuthGraphCache
      */
-    public AuthServiceImpl(AuthMapper mapper, Core core) {
+    public AuthServiceImpl(AuthMapper mapper, Core core, LoginVerifier verifier, FailureCounter failureCounter, RateLimiter rateLimiter,
+                           PermitCache permitCache, AuthGraphCache graphCache) {
         this.mapper = mapper;
         this.core = core;
+        this.verifier = verifier;
+        this.failureCounter = failureCounter;
+        this.rateLimiter = rateLimiter;
+        this.permitCache = permitCache;
+        this.graphCache = graphCache;
     }
 
     /**
@@ -68,7 +95,7 @@ public class AuthServiceImpl implements AuthService {
      */
     @Override
     public Reply getCode(String account, int type) {
-        String userId = core.getUserId(account);
+        String userId = type == 0 ? core.findUserId(account) : core.getUserId(account);
         if (userId == null) {
             if (type == 0) {
                 return ReplyHelper.notExist("账号或密码错误");
@@ -77,6 +104,10 @@ public class AuthServiceImpl implements AuthService {
             }
         }
 
+        if (type == 0 && failureCounter.isLocked(userId)) {
+            return ReplyHelper.fail(failureCounter.getLockedMessage());
+        }
+
         String key = "User:" + userId;
         if (!Redis.hasKey(key)) {
             Redis.deleteKey("ID:" + account);
@@ -103,56 +134,69 @@ public class AuthServiceImpl implements AuthService {
     }
 
     /**
-     * 获取Token
+     * 获取验证码短信的发送状态
      *
-     * @param login 用户登录数据
+     * @param code 获取验证码时返回的Code
      * @return Reply
      */
     @Override
-    public Reply getToken(LoginDto login) {
-        // 验证签名
-        String code = core.getCode(login.getSignature());
-        if (code == null) {
-            String account = login.getAccount();
-            logger.warn("账号[{}]正在尝试使用错误的签名请求令牌!", account);
-
-            String userId = core.getUserId(account);
-            String key = "User:" + userId;
-            if (!Redis.hasKey(key)) {
-                Redis.deleteKey("ID:" + account);
-                return ReplyHelper.fail("发生了一点小意外,请重新提交");
-            }
+    public Reply getSmsStatus(String code) {
+        String status = core.getSmsStatus(code);
+        if (status == null) {
+            return ReplyHelper.notExist("发送记录不存在或已过期");
+        }
 
-            int failureCount = core.getFailureCount(userId);
-            if (failureCount > 5) {
-                return ReplyHelper.fail("错误次数过多,账号已被锁定!请于10分钟后再试");
-            }
+        if (status.startsWith(SmsDispatcher.FAILED)) {
+            int index = status.indexOf('|');
+            return ReplyHelper.fail(index < 0 ? "发送短信失败,请稍后重试" : status.substring(index + 1));
+        }
 
-            Redis.set(key, "FailureCount", failureCount + 1);
-            Redis.set(key, "LastFailureTime", DateHelper.getDateTime());
+        return ReplyHelper.success(status);
+    }
 
-            return ReplyHelper.invalidParam("账号或密码错误");
+    /**
+     * 获取Token
+     *
+     * @param login 用户登录数据
+     * @return Reply
+     */
+    @Override
+    public Reply getToken(LoginDto login) {
+        // 验证应用是否过期
+        if (core.appIsExpired(login)) {
+            return ReplyHelper.fail("应用已过期,请续租");
         }
 
-        // 验证用户
-        String userId = core.getId(code);
-        if (userId == null || userId.isEmpty()) {
-            return ReplyHelper.fail("发生了一点小意外,请重新提交");
+        // 原子地验证签名、Code和用户状态
+        LoginVerifier.Result result = verifier.verify(login.getSignature());
+        switch (result.getStatus()) {
+            case SUCCESS:
+                TokenDto tokens = core.creatorToken(result.getCode(), login, result.getUserId());
+                return ReplyHelper.success(tokens);
+            case USER_INVALID:
+                return ReplyHelper.forbid();
+            case INVALID_SIGN:
+                return signatureFailure(login.getAccount());
+            default:
+                return ReplyHelper.fail("发生了一点小意外,请重新提交");
         }
+    }
 
-        String key = "User:" + userId;
-        boolean isInvalid = Boolean.parseBoolean(Redis.get(key, "invalid"));
-        if (isInvalid) {
-            return ReplyHelper.forbid();
-        }
+    /**
+     * 记录签名错误
+     *
+     * @param account 登录账号
+     * @return Reply
+     */
+    private Reply signatureFailure(String account) {
+        logger.warn("账号[{}]正在尝试使用错误的签名请求令牌!", account);
 
-        // 验证应用是否过期
-        if (core.appIsExpired(login, userId)) {
-            return ReplyHelper.fail("应用已过期,请续租");
+        String userId = core.findUserId(account);
+        if (userId != null && failureCounter.record(userId)) {
+            return ReplyHelper.fail(failureCounter.getLockedMessage());
         }
 
-        TokenDto tokens = core.creatorToken(code, login, userId);
-        return ReplyHelper.success(tokens);
+        return ReplyHelper.invalidParam("账号或密码错误");
     }
 
     /**
@@ -192,7 +236,7 @@ public class AuthServiceImpl implements AuthService {
         }
 
         // 验证应用是否过期
-        if (core.appIsExpired(login, userId)) {
+        if (core.appIsExpired(login)) {
             return ReplyHelper.fail("应用已过期,请续租");
         }
 
@@ -214,6 +258,10 @@ public class AuthServiceImpl implements AuthService {
         String mobile = login.getAccount();
         String verifyKey = Util.md5(0 + mobile + login.getCode());
         Reply reply = core.verifySmsCode(verifyKey);
+        if (reply == null) {
+            return ReplyHelper.fail("验证短信验证码失败,请稍后重试");
+        }
+
         if (!reply.getSuccess()) {
             return ReplyHelper.invalidParam("短信验证码错误");
         }
@@ -253,7 +301,7 @@ public class AuthServiceImpl implements AuthService {
         }
 
         // 验证应用是否过期
-        if (core.appIsExpired(login, userId)) {
+        if (core.appIsExpired(login)) {
             return ReplyHelper.fail("应用已过期,请续租");
         }
 
@@ -265,18 +313,150 @@ public class AuthServiceImpl implements AuthService {
     }
 
     /**
-     * 获取用户授权码
+     * 获取用户授权码,优先读取令牌中的授权码(过期时后台更新),令牌不可用时读取授权码缓存
      *
-     * @param info 用户登录信息
+     * @param info    用户登录信息
+     * @param tokenId 令牌ID,可为空
      * @return Reply
      */
     @Override
-    public Reply getPermits(LoginInfo info) {
-        List<String> list = mapper.getAuthInfos(info.getAppId(), info.getTenantId(), info.getUserId());
+    public Reply getPermits(LoginInfo info, String tokenId) {
+        Token token = tokenId == null ? null : core.getToken(tokenId);
+        if (token != null && Objects.equals(token.getUserId(), info.getUserId()) && Objects.equals(token.getAppId(), info.getAppId())
+                && Objects.equals(token.getTenantId(), info.getTenantId())) {
+            List<String> list = core.getPermits(tokenId, token);
+            if (list != null) {
+                return ReplyHelper.success(list);
+            }
+        }
+
+        List<String> list = permitCache.get(info.getAppId(), info.getTenantId(), info.getUserId());
 
         return ReplyHelper.success(list);
     }
 
+    /**
+     * 批量验证用户是否拥有授权码
+     * <p>
+     * 令牌和用户授权码均以管道批量读取,令牌查询以令牌中的授权码位图判断,返回与查询顺序一致的验证结果;令牌不存在或已过期、应用未加载授权图,
+     * 或用户不属于调用方所在租户时结果为false。
+     *
+     * @param info    调用方登录信息
+     * @param queries 权限查询集合
+     * @return Reply
+     */
+    @Override
+    public Reply checkPermits(LoginInfo info, List<PermitQuery> queries) {
+        if (queries == null || queries.isEmpty()) {
+            return ReplyHelper.invalidParam("查询集合不能为空");
+        }
+
+        if (queries.size() > MAX_PERMIT_QUERIES) {
+            return ReplyHelper.invalidParam("单次查询不能超过" + MAX_PERMIT_QUERIES + "条");
+        }
+
+        // 批量读取令牌
+        Set<String> tokenIds = new LinkedHashSet<>();
+        for (PermitQuery query : queries) {
+            if (query.getTokenId() != null && !query.getTokenId().isEmpty()) {
+                tokenIds.add(query.getTokenId());
+            }
+        }
+
+        Map<String, Token> tokens = tokenIds.isEmpty() ? Collections.emptyMap() : core.getTokens(new ArrayList<>(tokenIds));
+        LocalDateTime now = LocalDateTime.now();
+
+        // 令牌查询以令牌中的授权码位图判断;其余查询确定用户,相同用户只读取一次授权码
+        Map<String, Integer> index = new HashMap<>();
+        List<String[]> keys = new ArrayList<>();
+        Boolean[] results = new Boolean[queries.size()];
+        int[] slots = new int[queries.size()];
+        for (int i = 0; i < slots.length; i++) {
+            PermitQuery query = queries.get(i);
+            String[] key = keyOf(info, query, tokens, now);
+            slots[i] = -1;
+            if (key == null) {
+                results[i] = false;
+                continue;
+            }
+
+            String tokenId = query.getTokenId();
+            if (tokenId != null && !tokenId.isEmpty()) {
+                results[i] = core.hasPermit(tokenId, tokens.get(tokenId), query.getAuthCode());
+                if (results[i] != null) {
+                    continue;
+                }
+            }
+
+            slots[i] = index.computeIfAbsent(String.join("|", key[0], key[1] == null ? "" : key[1], key[2]), k -> {
+                keys.add(key);
+                return keys.size() - 1;
+            });
+        }
+
+        List<Set<String>> permits = new ArrayList<>(keys.size());
+        if (!keys.isEmpty()) {
+            permitCache.getAll(keys).forEach(i -> permits.add(new HashSet<>(i)));
+        }
+
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] >= 0) {
+                results[i] = permits.get(slots[i]).contains(queries.get(i).getAuthCode());
+            }
+        }
+
+        return ReplyHelper.success(Arrays.asList(results));
+    }
+
+    /**
+     * 获取接口调用许可
+     *
+     * @param query 限流查询
+     * @return Reply
+     */
+    @Override
+    public Reply checkLimit(LimitQuery query) {
+        LimitResult result = rateLimiter.acquire(query.getMethod(), query.getUrl(), query.getKey());
+
+        return ReplyHelper.success(result);
+    }
+
+    /**
+     * 获取查询对应的用户
+     * <p>
+     * 应用ID由调用方提供,只接受已加载授权图的应用,以免为无效的应用ID加载并常驻授权图;
+     * 调用方属于某个租户时,只能查询该租户下的用户。
+     *
+     * @param info   调用方登录信息
+     * @param query  权限查询
+     * @param tokens 令牌ID与令牌的映射
+     * @param now    当前时间
+     * @return (应用ID, 租户ID, 用户ID),令牌无效、参数不完整或超出调用方范围时返回null
+     */
+    private String[] keyOf(LoginInfo info, PermitQuery query, Map<String, Token> tokens, LocalDateTime now) {
+        String[] key;
+        String tokenId = query.getTokenId();
+        if (tokenId != null && !tokenId.isEmpty()) {
+            Token token = tokens.get(tokenId);
+            if (token == null || (token.getExpiryTime() != null && token.getExpiryTime().isBefore(now))) {
+                return null;
+            }
+
+            key = new String[]{token.getAppId(), token.getTenantId(), token.getUserId()};
+        } else if (query.getAppId() == null || query.getUserId() == null) {
+            return null;
+        } else {
+            key = new String[]{query.getAppId(), query.getTenantId(), query.getUserId()};
+        }
+
+        String tenantId = info.getTenantId();
+        if (tenantId != null && !tenantId.isEmpty() && !tenantId.equals(key[1])) {
+            return null;
+        }
+
+        return graphCache.contains(key[0]) ? key : null;
+    }
+
     /**
      * 刷新访问令牌过期时间
      *
@@ -327,7 +507,11 @@ public class AuthServiceImpl implements AuthService {
      */
     @Override
     public Reply getTenants(String appId, String account) {
-        String userId = core.getUserId(account);
+        String userId = core.findUserId(account);
+        if (userId == null) {
+            return ReplyHelper.success(new ArrayList<>());
+        }
+
         List<MemberDto> list = mapper.getTenants(appId, userId);
 
         return ReplyHelper.success(list);
@@ -341,7 +525,7 @@ public class AuthServiceImpl implements AuthService {
      */
     @Override
     public Reply getNavigators(LoginInfo info) {
-        List<NavDto> list = mapper.getNavigators(info.getAppId(), info.getTenantId(), info.getUserId());
+        List<NavDto> list = graphCache.getNavigators(info.getAppId(), info.getTenantId(), info.getUserId());
 
         return ReplyHelper.success(list);
     }
@@ -355,7 +539,10 @@ public class AuthServiceImpl implements AuthService {
      */
     @Override
     public Reply getModuleFunctions(LoginInfo info, String moduleId) {
-        List<FuncDto> list = mapper.getModuleFunctions(moduleId, info.getTenantId(), info.getUserId());
+        List<FuncDto> list = graphCache.getModuleFunctions(info.getAppId(), moduleId, info.getTenantId(), info.getUserId());
+        if (list == null) {
+            list = mapper.getModuleFunctions(moduleId, info.getTenantId(), info.getUserId());
+        }
 
         return ReplyHelper.success(list);
     }
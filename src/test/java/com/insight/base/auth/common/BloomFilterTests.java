@@ -0,0 +1,50 @@
+package com.insight.base.auth.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/30
+ * @remark 布隆过滤器测试
+ */
+public class BloomFilterTests {
+
+    @Test
+    public void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(100000, 0.01);
+        for (int i = 0; i < 100000; i++) {
+            filter.put("1380000" + i);
+        }
+
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertTrue(filter.mightContain("1380000" + i));
+        }
+    }
+
+    @Test
+    public void falsePositiveRate() {
+        BloomFilter filter = new BloomFilter(100000, 0.01);
+        for (int i = 0; i < 100000; i++) {
+            filter.put("user" + i + "@insight.com");
+        }
+
+        int positives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("guest" + i + "@insight.com")) {
+                positives++;
+            }
+        }
+
+        Assert.assertTrue(positives < 2000);
+        Assert.assertEquals(0.01, filter.expectedFpp(), 0.005);
+    }
+
+    @Test
+    public void empty() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        Assert.assertFalse(filter.mightContain("admin"));
+        Assert.assertEquals(0, filter.expectedFpp(), 0);
+    }
+}
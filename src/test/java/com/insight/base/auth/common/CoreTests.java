@@ -0,0 +1,28 @@
+package com.insight.base.auth.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/8
+ * @remark 登录标识类型判断测试
+ */
+public class CoreTests {
+
+    @Test
+    public void typedKeys() {
+        Assert.assertEquals(Core.KEY_ID, Core.keyType("e0000000000000000000000000000001"));
+        Assert.assertEquals(Core.KEY_MOBILE, Core.keyType("13800138000"));
+        Assert.assertEquals(Core.KEY_EMAIL, Core.keyType("user@insight.com"));
+    }
+
+    @Test
+    public void ambiguousKeys() {
+        Assert.assertEquals(Core.KEY_OTHER, Core.keyType("+8613800138000"));
+        Assert.assertEquals(Core.KEY_OTHER, Core.keyType("0085291234567"));
+        Assert.assertEquals(Core.KEY_OTHER, Core.keyType("oBench0000000000000000000001"));
+        Assert.assertEquals(Core.KEY_OTHER, Core.keyType("admin"));
+        Assert.assertEquals(Core.KEY_OTHER, Core.keyType("@admin"));
+    }
+}
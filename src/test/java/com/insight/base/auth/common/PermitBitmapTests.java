@@ -0,0 +1,46 @@
+package com.insight.base.auth.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/20
+ * @remark 授权码位图测试
+ */
+public class PermitBitmapTests {
+
+    @Test
+    public void arrayContainer() {
+        PermitBitmap bitmap = PermitBitmap.of(new int[]{5, 3, 3, 70000, -1});
+
+        Assert.assertArrayEquals(new int[]{3, 5, 70000}, bitmap.toArray());
+        Assert.assertTrue(bitmap.contains(70000));
+        Assert.assertFalse(bitmap.contains(4));
+        Assert.assertFalse(bitmap.contains(-1));
+    }
+
+    @Test
+    public void bitmapContainer() {
+        int[] values = new Random(42).ints(6000, 0, 65536).sorted().distinct().toArray();
+        PermitBitmap bitmap = PermitBitmap.fromBytes(PermitBitmap.of(values).toBytes());
+
+        Assert.assertArrayEquals(values, bitmap.toArray());
+        Assert.assertEquals(values.length, bitmap.cardinality());
+        for (int i = 0; i < 65536; i++) {
+            Assert.assertEquals(Arrays.binarySearch(values, i) >= 0, bitmap.contains(i));
+        }
+    }
+
+    @Test
+    public void empty() {
+        PermitBitmap bitmap = PermitBitmap.fromBytes(PermitBitmap.of(new int[0]).toBytes());
+
+        Assert.assertNotNull(bitmap);
+        Assert.assertEquals(0, bitmap.cardinality());
+        Assert.assertFalse(bitmap.contains(0));
+    }
+}
@@ -0,0 +1,215 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.cache.CacheChannel;
+import com.insight.base.auth.common.dto.LimitResult;
+import com.insight.base.auth.common.entity.InterfaceConfig;
+import com.insight.base.auth.common.mapper.ConfigMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/1
+ * @remark 接口限流器测试,验证限额换算、预取许可和拒绝等待的进程内处理及Redis不可用时的处理
+ */
+public class RateLimiterTests {
+    private final ConfigMapper mapper = Mockito.mock(ConfigMapper.class);
+    private final StringRedisTemplate template = Mockito.mock(StringRedisTemplate.class);
+    private final List<Object[]> calls = new ArrayList<>();
+    private List<Long> reply;
+
+    /**
+     * 模拟的Redis时间和理论到达时间(TAT)
+     */
+    private long clock;
+    private final Map<String, Double> tats = new HashMap<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ValueOperations<String, String> ops = Mockito.mock(ValueOperations.class);
+        Mockito.when(template.opsForValue()).thenReturn(ops);
+        Mockito.when(mapper.getLimitConfigs()).thenReturn(Arrays.asList(config("GET", "/gap", 2, null, null),
+                config("POST", "/cycle", null, 60, 6000), config("GET", "/both", 1, 10, 5), config("GET", "/daily", null, 86400, 200)));
+        Mockito.when(template.execute(ArgumentMatchers.any(RedisScript.class), ArgumentMatchers.anyList(), ArgumentMatchers.any()))
+                .thenAnswer(i -> {
+                    calls.add(Arrays.copyOfRange(i.getArguments(), 2, i.getArguments().length));
+                    return reply;
+                });
+    }
+
+    @Test
+    public void limit() {
+        RateLimiter.Limit gap = new RateLimiter.Limit(config("GET", "/gap", 2, null, null));
+        Assert.assertEquals(2000, gap.gap);
+        Assert.assertEquals(0, gap.cycle);
+        Assert.assertEquals(1, gap.lease);
+        Assert.assertEquals("调用过于频繁,请稍后再试", gap.message);
+
+        RateLimiter.Limit cycle = new RateLimiter.Limit(config("POST", "/cycle", null, 60, 6000));
+        Assert.assertEquals(0, cycle.gap);
+        Assert.assertEquals(60000, cycle.cycle);
+        Assert.assertEquals(10.0, cycle.interval, 0.000001);
+        Assert.assertEquals(100, cycle.lease);
+
+        Assert.assertEquals(100, new RateLimiter.Limit(config("GET", "/big", null, 1, 1000000)).lease);
+        Assert.assertEquals(20, new RateLimiter.Limit(config("GET", "/minute", null, 60, 1200)).lease);
+        Assert.assertEquals(1, new RateLimiter.Limit(config("GET", "/slow", null, 60, 60)).lease);
+        Assert.assertEquals(1, new RateLimiter.Limit(config("GET", "/day", null, 86400, 10000)).lease);
+        Assert.assertEquals(1, new RateLimiter.Limit(config("GET", "/small", null, 10, 5)).lease);
+        Assert.assertEquals(1, new RateLimiter.Limit(config("GET", "/both", 1, 10, 5000)).lease);
+        Assert.assertEquals(0, new RateLimiter.Limit(config("GET", "/none", null, 10, null)).cycle);
+    }
+
+    @Test
+    public void unlimited() {
+        Assert.assertTrue(limiter(true).acquire("GET", "/other", "k").getAllowed());
+        Assert.assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void scriptArguments() {
+        reply = Arrays.asList(1L, 0L);
+        RateLimiter limiter = limiter(true);
+        limiter.acquire("get", "/both", "k");
+
+        Object[] args = calls.get(0);
+        Assert.assertEquals(6, args.length);
+        Assert.assertEquals("1", args[1]);
+        Assert.assertEquals("1000", args[2]);
+        Assert.assertEquals("1000", args[3]);
+        Assert.assertEquals("2000.0", args[4]);
+        Assert.assertEquals("10000", args[5]);
+    }
+
+    @Test
+    public void lease() {
+        reply = Arrays.asList(100L, 0L);
+        RateLimiter limiter = limiter(true);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limiter.acquire("POST", "/cycle", "k").getAllowed());
+        }
+
+        Assert.assertEquals(1, calls.size());
+        Assert.assertEquals("100", calls.get(0)[1]);
+
+        limiter.acquire("POST", "/cycle", "k");
+        Assert.assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void denial() {
+        reply = Arrays.asList(0L, 1500L);
+        RateLimiter limiter = limiter(true);
+        LimitResult result = limiter.acquire("GET", "/gap", "k");
+        Assert.assertFalse(result.getAllowed());
+        Assert.assertEquals(1500L, (long) result.getRetryAfter());
+
+        result = limiter.acquire("GET", "/gap", "k");
+        Assert.assertFalse(result.getAllowed());
+        Assert.assertTrue(result.getRetryAfter() > 0 && result.getRetryAfter() <= 1500);
+        Assert.assertEquals(1, calls.size());
+
+        Assert.assertFalse(limiter.acquire("GET", "/gap", "other").getAllowed());
+        Assert.assertEquals(2, calls.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sparseCaller() {
+        Mockito.when(template.execute(ArgumentMatchers.any(RedisScript.class), ArgumentMatchers.anyList(), ArgumentMatchers.any()))
+                .thenAnswer(i -> gcra(i.getArgument(1), Arrays.copyOfRange(i.getArguments(), 2, i.getArguments().length)));
+
+        // 每2秒调用一次(长于预取许可的有效时间),每次调用前重新加载以使未用的预取许可作废:全天限额内的调用均应允许
+        RateLimiter limiter = limiter(true);
+        for (int i = 0; i < 200; i++) {
+            clock += 2000;
+            limiter.reload();
+            Assert.assertTrue(limiter.acquire("GET", "/daily", "k").getAllowed());
+        }
+
+        clock += 2000;
+        limiter.reload();
+        Assert.assertFalse(limiter.acquire("GET", "/daily", "k").getAllowed());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void redisUnavailable() {
+        Mockito.when(template.execute(ArgumentMatchers.any(RedisScript.class), ArgumentMatchers.anyList(), ArgumentMatchers.any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        Assert.assertTrue(limiter(true).acquire("GET", "/gap", "k").getAllowed());
+
+        LimitResult result = limiter(false).acquire("GET", "/gap", "k");
+        Assert.assertFalse(result.getAllowed());
+        Assert.assertTrue(result.getRetryAfter() > 0);
+    }
+
+    private RateLimiter limiter(boolean failOpen) {
+        RateLimiter limiter = new RateLimiter(mapper, template, Mockito.mock(CacheChannel.class), new SimpleMeterRegistry(), failOpen);
+        limiter.reload();
+
+        return limiter;
+    }
+
+    /**
+     * 以模拟时钟执行与限流脚本相同的GCRA计算
+     *
+     * @param keys 限额Key
+     * @param args 脚本参数
+     * @return {获得的许可数, 需等待的毫秒数}
+     */
+    private List<Long> gcra(List<String> keys, Object[] args) {
+        long grant = Long.parseLong((String) args[1]);
+        double wait = 0;
+        double[] values = new double[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            double t = Double.parseDouble((String) args[i * 2 + 2]);
+            double period = Double.parseDouble((String) args[i * 2 + 3]);
+            double tat = Math.max(tats.getOrDefault(keys.get(i), (double) clock), clock);
+            long available = (long) Math.floor((clock + period - tat) / t + 0.000001);
+            if (available < 1) {
+                wait = Math.max(wait, tat + t - period - clock);
+            }
+
+            grant = Math.min(grant, available);
+            values[i] = tat;
+        }
+
+        if (grant < 1) {
+            return Arrays.asList(0L, (long) Math.ceil(wait));
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            tats.put(keys.get(i), values[i] + grant * Double.parseDouble((String) args[i * 2 + 2]));
+        }
+
+        return Arrays.asList(grant, 0L);
+    }
+
+    private static InterfaceConfig config(String method, String url, Integer gap, Integer cycle, Integer max) {
+        InterfaceConfig config = new InterfaceConfig();
+        config.setMethod(method);
+        config.setUrl(url);
+        config.setLimitGap(gap);
+        config.setLimitCycle(cycle);
+        config.setLimitMax(max);
+
+        return config;
+    }
+}
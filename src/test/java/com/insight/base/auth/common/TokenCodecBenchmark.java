@@ -0,0 +1,53 @@
+package com.insight.base.auth.common;
+
+import com.insight.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/4
+ * @remark 令牌缓存格式基准测试,对比二进制格式与JSON格式的体积和解析耗时
+ * <p>
+ * 不属于单元测试,耗时随机器负载变化,不做断言。以main方法运行(测试classpath),结果写入日志。
+ */
+public final class TokenCodecBenchmark {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenCodecBenchmark.class);
+    private static final int ROUNDS = 20000;
+
+    private TokenCodecBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        for (int count : new int[]{0, 20, 200}) {
+            Token token = TokenCodecTests.createToken(count);
+            byte[] json = token.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] binary = TokenCodec.encode(token);
+
+            long jsonTime = measure(() -> Json.toBean(new String(json, StandardCharsets.UTF_8), Token.class));
+            long binaryTime = measure(() -> TokenCodec.decode(binary));
+            LOGGER.info("授权码{}个: JSON {}字节 {}ns/次, 二进制 {}字节 {}ns/次", count, json.length, jsonTime, binary.length, binaryTime);
+        }
+    }
+
+    /**
+     * 预热后测量平均耗时
+     *
+     * @param runnable 被测操作
+     * @return 平均耗时(纳秒)
+     */
+    private static long measure(Runnable runnable) {
+        for (int i = 0; i < ROUNDS; i++) {
+            runnable.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            runnable.run();
+        }
+
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+}
@@ -0,0 +1,104 @@
+package com.insight.base.auth.common;
+
+import com.insight.utils.Util;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/4
+ * @remark 令牌编解码测试,验证二进制格式的往返一致性、体积小于JSON格式及旧JSON格式的兼容读取;解析耗时对比见TokenCodecBenchmark
+ */
+public class TokenCodecTests {
+
+    @Test
+    public void roundTrip() {
+        Token token = createToken(10);
+        Token decoded = TokenCodec.decode(TokenCodec.encode(token));
+
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals(token.getUserId(), decoded.getUserId());
+        Assert.assertEquals(token.getAppId(), decoded.getAppId());
+        Assert.assertNull(decoded.getTenantId());
+        Assert.assertEquals(token.getSecretKey(), decoded.getSecretKey());
+        Assert.assertEquals(token.getRefreshKey(), decoded.getRefreshKey());
+        Assert.assertEquals(token.getHash(), decoded.getHash());
+        Assert.assertEquals(token.getLife(), decoded.getLife());
+        Assert.assertEquals(token.getPermitLife(), decoded.getPermitLife());
+        Assert.assertEquals(token.getAutoRefresh(), decoded.getAutoRefresh());
+        Assert.assertEquals(token.getExpiryTime(), decoded.getExpiryTime());
+        Assert.assertEquals(token.getFailureTime(), decoded.getFailureTime());
+        Assert.assertEquals(token.getPermitFuncs(), decoded.getPermitFuncs());
+    }
+
+    @Test
+    public void roundTripBitmap() {
+        Token token = createToken(0);
+        token.setPermitFuncs(null);
+        token.setPermitVersion(300);
+        token.setPermitBitmap(PermitBitmap.of(new int[]{1, 7, 299}).toBytes());
+        Token decoded = TokenCodec.decode(TokenCodec.encode(token));
+
+        Assert.assertNotNull(decoded);
+        Assert.assertNull(decoded.getPermitFuncs());
+        Assert.assertEquals(token.getPermitVersion(), decoded.getPermitVersion());
+        Assert.assertTrue(decoded.hasPermit(7));
+        Assert.assertFalse(decoded.hasPermit(8));
+    }
+
+    @Test
+    public void readJson() {
+        Token token = createToken(10);
+        Token decoded = TokenCodec.decode(token.toString().getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals(token.getSecretKey(), decoded.getSecretKey());
+        Assert.assertEquals(token.getPermitFuncs(), decoded.getPermitFuncs());
+    }
+
+    @Test
+    public void size() {
+        for (int count : new int[]{0, 20, 200}) {
+            Token token = createToken(count);
+            byte[] json = token.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] binary = TokenCodec.encode(token);
+            Assert.assertTrue(binary.length < json.length);
+        }
+
+        Token token = createToken(0);
+        token.setPermitFuncs(null);
+        token.setPermitVersion(300);
+        token.setPermitBitmap(PermitBitmap.of(new int[]{1, 7, 299}).toBytes());
+        Assert.assertTrue(TokenCodec.encode(token).length < token.toString().getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    static Token createToken(int count) {
+        List<String> funcs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            funcs.add("func" + i);
+        }
+
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        Token token = new Token();
+        token.setUserId(Util.uuid());
+        token.setAppId(Util.uuid());
+        token.setSecretKey(Util.uuid());
+        token.setRefreshKey(Util.uuid());
+        token.setHash(Util.md5(Util.uuid()));
+        token.setPermitLife(300000L);
+        token.setLife(7200000L);
+        token.setSignInOne(false);
+        token.setAutoRefresh(true);
+        token.setPermitFuncs(funcs);
+        token.setPermitTime(now);
+        token.setExpiryTime(now.plusHours(2));
+        token.setFailureTime(now.plusHours(24));
+
+        return token;
+    }
+}
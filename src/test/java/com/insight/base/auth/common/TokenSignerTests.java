@@ -0,0 +1,79 @@
+package com.insight.base.auth.common;
+
+import com.insight.base.auth.common.dto.TokenClaims;
+import com.insight.utils.Util;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/9
+ * @remark 签名令牌生成/验证测试
+ */
+public class TokenSignerTests {
+    private final TokenSigner signer = new TokenSigner("test-secret");
+
+    @Test
+    public void roundTrip() {
+        String tokenId = Util.uuid();
+        Token token = createToken(LocalDateTime.now().plusHours(2));
+        String signed = signer.sign(tokenId, token);
+
+        Assert.assertTrue(TokenSigner.isSigned(signed));
+        Assert.assertEquals(tokenId, TokenSigner.readId(signed));
+
+        TokenClaims claims = signer.verify(signed);
+        Assert.assertNotNull(claims);
+        Assert.assertEquals(tokenId, claims.getId());
+        Assert.assertEquals(token.getUserId(), claims.getUserId());
+        Assert.assertEquals(token.getAppId(), claims.getAppId());
+        Assert.assertEquals(token.getSecretKey(), claims.getSecret());
+        Assert.assertEquals(TokenSigner.digest(token.getPermitFuncs()), claims.getPermits());
+    }
+
+    @Test
+    public void tampered() {
+        String signed = signer.sign(Util.uuid(), createToken(LocalDateTime.now().plusHours(2)));
+        String[] parts = signed.split("\\.");
+        char last = parts[2].charAt(parts[2].length() - 2);
+        String signature = parts[2].substring(0, parts[2].length() - 2) + (last == 'A' ? 'B' : 'A') + parts[2].charAt(parts[2].length() - 1);
+        String other = signer.sign(Util.uuid(), createToken(LocalDateTime.now().plusHours(2)));
+
+        Assert.assertNull(signer.verify(parts[0] + "." + parts[1] + "." + signature));
+        Assert.assertNull(signer.verify(parts[0] + "." + other.split("\\.")[1] + "." + parts[2]));
+        Assert.assertNull(new TokenSigner("other-secret").verify(signed));
+        Assert.assertNull(new TokenSigner("").verify(signed));
+    }
+
+    @Test
+    public void expired() {
+        String signed = signer.sign(Util.uuid(), createToken(LocalDateTime.now().minusSeconds(1)));
+
+        Assert.assertNull(signer.verify(signed));
+    }
+
+    @Test
+    public void malformed() {
+        Assert.assertFalse(TokenSigner.isSigned("abc"));
+        Assert.assertNull(TokenSigner.readId("a.b"));
+        Assert.assertNull(TokenSigner.readId("a.b.c.d"));
+        Assert.assertNull(TokenSigner.readId("a.@@@.c"));
+        Assert.assertNull(signer.verify("abc"));
+        Assert.assertNull(signer.verify("a.b.@@@"));
+        Assert.assertNull(signer.verify(null));
+    }
+
+    private static Token createToken(LocalDateTime expiry) {
+        Token token = new Token();
+        token.setUserId(Util.uuid());
+        token.setAppId(Util.uuid());
+        token.setSecretKey(Util.uuid());
+        token.setPermitFuncs(Arrays.asList("func1", "func2"));
+        token.setExpiryTime(expiry);
+
+        return token;
+    }
+}
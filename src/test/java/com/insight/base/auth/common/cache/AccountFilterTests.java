@@ -0,0 +1,50 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.mapper.AuthMapper;
+import com.insight.utils.pojo.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/30
+ * @remark 登录标识过滤器测试,验证标识不区分大小写
+ */
+public class AccountFilterTests {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void ignoreCase() {
+        User user = new User();
+        user.setId("E0000000000000000000000000000001");
+        user.setAccount("Admin");
+        user.setEmail("Admin@Insight.com");
+
+        AuthMapper mapper = Mockito.mock(AuthMapper.class);
+        Mockito.when(mapper.getUserCount()).thenReturn(1L);
+        Mockito.doAnswer(i -> {
+            ResultContext<User> context = Mockito.mock(ResultContext.class);
+            Mockito.when(context.getResultObject()).thenReturn(user);
+            ((ResultHandler<User>) i.getArgument(0)).handleResult(context);
+
+            return null;
+        }).when(mapper).streamUsers(ArgumentMatchers.any());
+
+        AccountFilter filter = new AccountFilter(mapper, Mockito.mock(CacheChannel.class), new SimpleMeterRegistry(), 0.0001, 1000);
+        filter.rebuild();
+        filter.put("Operator", "13800138000");
+
+        Assert.assertTrue(filter.mightContain("admin"));
+        Assert.assertTrue(filter.mightContain("ADMIN"));
+        Assert.assertTrue(filter.mightContain("admin@insight.com"));
+        Assert.assertTrue(filter.mightContain("e0000000000000000000000000000001"));
+        Assert.assertTrue(filter.mightContain("operator"));
+        Assert.assertTrue(filter.mightContain("Operator"));
+        Assert.assertFalse(filter.mightContain("nobody"));
+    }
+}
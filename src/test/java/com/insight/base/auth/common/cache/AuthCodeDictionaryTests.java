@@ -0,0 +1,93 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.Token;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/20
+ * @remark 应用授权码字典测试,验证字典追加后旧版本令牌的位图仍可正确解码
+ */
+public class AuthCodeDictionaryTests {
+    private static final String APP_ID = "app";
+    private final StringRedisTemplate template = Mockito.mock(StringRedisTemplate.class);
+
+    /**
+     * 模拟Redis中的字典列表
+     */
+    private final List<String> list = new ArrayList<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ListOperations<String, String> ops = Mockito.mock(ListOperations.class);
+        Mockito.when(template.opsForList()).thenReturn(ops);
+        Mockito.when(ops.range(ArgumentMatchers.anyString(), ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong())).thenAnswer(i -> {
+            int start = i.<Long>getArgument(1).intValue();
+            return start >= list.size() ? Collections.emptyList() : new ArrayList<>(list.subList(start, list.size()));
+        });
+        Mockito.when(template.execute(ArgumentMatchers.any(RedisScript.class), ArgumentMatchers.anyList(), ArgumentMatchers.any()))
+                .thenAnswer(i -> {
+                    Object[] args = i.getArguments();
+                    for (int j = 2; j < args.length; j++) {
+                        if (!list.contains(args[j])) {
+                            list.add((String) args[j]);
+                        }
+                    }
+
+                    return null;
+                });
+    }
+
+    @Test
+    public void roundTrip() {
+        AuthCodeDictionary dictionary = new AuthCodeDictionary(template);
+        Token token = token(dictionary, "newUser", "editUser");
+
+        Assert.assertNull(token.getPermitFuncs());
+        Assert.assertEquals(2, (int) token.getPermitVersion());
+        Assert.assertEquals(Arrays.asList("newUser", "editUser"), dictionary.decode(token));
+        Assert.assertTrue(dictionary.hasPermit(token, "editUser"));
+        Assert.assertFalse(dictionary.hasPermit(token, "deleteUser"));
+    }
+
+    @Test
+    public void oldTokenAfterAppend() {
+        AuthCodeDictionary dictionary = new AuthCodeDictionary(template);
+        Token old = token(dictionary, "newUser", "editUser");
+        Token current = token(dictionary, "editUser", "deleteUser", "newRole");
+
+        Assert.assertEquals(4, (int) current.getPermitVersion());
+        Assert.assertEquals(Arrays.asList("newUser", "editUser"), dictionary.decode(old));
+        Assert.assertFalse(dictionary.hasPermit(old, "deleteUser"));
+        Assert.assertEquals(Arrays.asList("editUser", "deleteUser", "newRole"), dictionary.decode(current));
+
+        // 其他节点的字典落后于令牌版本时追加读取
+        AuthCodeDictionary other = new AuthCodeDictionary(template);
+        Assert.assertEquals(Arrays.asList("newUser", "editUser"), other.decode(old));
+        list.add("newTenant");
+        Token latest = token(dictionary, "newTenant");
+        Assert.assertTrue(other.hasPermit(latest, "newTenant"));
+        Assert.assertEquals(Arrays.asList("newUser", "editUser"), other.decode(old));
+    }
+
+    private static Token token(AuthCodeDictionary dictionary, String... codes) {
+        Token token = new Token();
+        token.setAppId(APP_ID);
+        dictionary.encode(token, Arrays.asList(codes));
+
+        return token;
+    }
+}
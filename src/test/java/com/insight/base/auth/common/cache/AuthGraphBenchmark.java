@@ -0,0 +1,71 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.dto.FuncDto;
+import com.insight.base.auth.common.dto.NavDto;
+import com.insight.base.auth.common.entity.FunctionAuthCode;
+import com.insight.base.auth.common.entity.RolePermit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/23
+ * @remark 应用授权图导航计算基准测试(1050个导航, 10万个功能, 3个角色)
+ * <p>
+ * 不属于单元测试,耗时随机器负载和JIT状态变化,不做断言。以main方法运行(测试classpath),结果写入日志;
+ * 线上的p99以auth.navigators.latency计时器为准。
+ */
+public final class AuthGraphBenchmark {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuthGraphBenchmark.class);
+    private static final String TENANT = "t1";
+    private static final int WARMUP = 5000;
+    private static final int ROUNDS = 2000;
+
+    private AuthGraphBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        List<NavDto> navs = new ArrayList<>();
+        List<FuncDto> funcs = new ArrayList<>();
+        List<FunctionAuthCode> codes = new ArrayList<>();
+        List<RolePermit> permits = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            navs.add(AuthGraphTests.nav("g" + i, null, i));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            navs.add(AuthGraphTests.nav("m" + i, "g" + i % 50, i));
+        }
+
+        for (int i = 0; i < 100000; i++) {
+            funcs.add(AuthGraphTests.func("f" + i, "m" + i % 1000, i));
+            codes.add(AuthGraphTests.code("f" + i, "code" + i));
+        }
+
+        for (int r = 0; r < 20; r++) {
+            for (int i = 0; i < 5000; i++) {
+                permits.add(AuthGraphTests.permit("r" + r, TENANT, "f" + (i * 20 + r), i % 100 != 0));
+            }
+        }
+
+        AuthGraph graph = new AuthGraph(1, navs, funcs, codes, permits);
+        String[] roles = {"r1", "r7", "r13"};
+        for (int i = 0; i < WARMUP; i++) {
+            graph.getNavigators(roles, TENANT);
+        }
+
+        long[] times = new long[ROUNDS];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            graph.getNavigators(roles, TENANT);
+            times[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(times);
+        LOGGER.info("导航计算: p50 {}us, p99 {}us", times[times.length / 2] / 1000, times[times.length * 99 / 100] / 1000);
+    }
+}
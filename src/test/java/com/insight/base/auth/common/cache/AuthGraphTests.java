@@ -0,0 +1,117 @@
+package com.insight.base.auth.common.cache;
+
+import com.insight.base.auth.common.dto.FuncDto;
+import com.insight.base.auth.common.dto.NavDto;
+import com.insight.base.auth.common.entity.FunctionAuthCode;
+import com.insight.base.auth.common.entity.RolePermit;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/3/23
+ * @remark 应用授权图测试,验证与SQL一致的拒绝优先及租户过滤语义
+ */
+public class AuthGraphTests {
+    private static final String TENANT = "t1";
+
+    /**
+     * 导航: g(根) -> m1, m2; 功能: f1(m1, codes a,b), f2(m1, code b), f3(m2, code c)
+     * 角色: r1(租户t1) 允许f1,f2,f3; r2(无租户) 拒绝f2; r3(租户t2) 允许f3
+     */
+    private final AuthGraph graph = new AuthGraph(1,
+            Arrays.asList(nav("g", null, 1), nav("m2", "g", 2), nav("m1", "g", 1)),
+            Arrays.asList(func("f2", "m1", 2), func("f1", "m1", 1), func("f3", "m2", 1)),
+            Arrays.asList(code("f1", "a"), code("f1", "b"), code("f2", "b"), code("f3", "c")),
+            Arrays.asList(permit("r1", TENANT, "f1", true), permit("r1", TENANT, "f2", true), permit("r1", TENANT, "f3", true),
+                    permit("r2", null, "f2", false), permit("r3", "t2", "f3", true)));
+
+    @Test
+    public void authInfos() {
+        Assert.assertEquals(set("a", "b", "c"), new HashSet<>(graph.getAuthInfos(new String[]{"r1", "r2"}, TENANT)));
+        Assert.assertEquals(Collections.emptyList(), graph.getAuthInfos(new String[]{"r1", "r2"}, null));
+        Assert.assertEquals(Collections.emptyList(), graph.getAuthInfos(new String[]{"r3"}, TENANT));
+    }
+
+    @Test
+    public void navigators() {
+        List<NavDto> list = graph.getNavigators(new String[]{"r1", "r2"}, TENANT);
+        Assert.assertEquals(Arrays.asList("g", "m1", "m2"), ids(list));
+
+        Assert.assertEquals(Collections.emptyList(), graph.getNavigators(new String[]{"r2"}, TENANT));
+    }
+
+    @Test
+    public void moduleFunctions() {
+        List<FuncDto> list = graph.getModuleFunctions("m1", new String[]{"r1", "r2"}, TENANT);
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("f1", list.get(0).getId());
+        Assert.assertEquals(Boolean.TRUE, list.get(0).getPermit());
+        Assert.assertEquals(Boolean.FALSE, list.get(1).getPermit());
+
+        list = graph.getModuleFunctions("m2", new String[]{"r2"}, TENANT);
+        Assert.assertNull(list.get(0).getPermit());
+        Assert.assertNull(graph.getModuleFunctions("other", new String[0], TENANT));
+    }
+
+    @Test
+    public void sharedModuleFunctions() {
+        AuthGraph.RoleSet first = graph.roleSet(new String[]{"r1", "r2", "r3"}, TENANT);
+        AuthGraph.RoleSet second = graph.roleSet(new String[]{"r2", "r1", "r1"}, TENANT);
+        Assert.assertEquals(first.getFingerprint(), second.getFingerprint());
+        Assert.assertSame(graph.getModuleFunctions("m1", first), graph.getModuleFunctions("m1", second));
+
+        AuthGraph.RoleSet other = graph.roleSet(new String[]{"r2"}, TENANT);
+        Assert.assertNotEquals(first.getFingerprint(), other.getFingerprint());
+        Assert.assertNull(graph.getModuleFunctions("m1", other).get(0).getPermit());
+    }
+
+    private static List<String> ids(List<NavDto> list) {
+        List<String> ids = new ArrayList<>();
+        list.forEach(i -> ids.add(i.getId()));
+
+        return ids;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    static NavDto nav(String id, String parentId, int index) {
+        NavDto dto = new NavDto();
+        dto.setId(id);
+        dto.setParentId(parentId);
+        dto.setIndex(index);
+
+        return dto;
+    }
+
+    static FuncDto func(String id, String navId, int index) {
+        FuncDto dto = new FuncDto();
+        dto.setId(id);
+        dto.setNavId(navId);
+        dto.setIndex(index);
+
+        return dto;
+    }
+
+    static FunctionAuthCode code(String functionId, String authCode) {
+        FunctionAuthCode item = new FunctionAuthCode();
+        item.setFunctionId(functionId);
+        item.setAuthCode(authCode);
+
+        return item;
+    }
+
+    static RolePermit permit(String roleId, String tenantId, String functionId, boolean permit) {
+        RolePermit item = new RolePermit();
+        item.setRoleId(roleId);
+        item.setTenantId(tenantId);
+        item.setFunctionId(functionId);
+        item.setPermit(permit);
+
+        return item;
+    }
+}
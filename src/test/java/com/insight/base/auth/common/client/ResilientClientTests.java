@@ -0,0 +1,174 @@
+package com.insight.base.auth.common.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import feign.Feign;
+import feign.FeignException;
+import feign.RequestLine;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.httpclient.ApacheHttpClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 宣炳刚
+ * @date 2020/4/3
+ * @remark 带隔离和熔断的Feign客户端测试(本地桩服务)
+ */
+public class ResilientClientTests {
+    private final AtomicInteger hits = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private StubApi api;
+
+    interface StubApi {
+
+        @RequestLine("GET /ok")
+        String ok();
+
+        @RequestLine("GET /slow")
+        String slow();
+
+        @RequestLine("GET /fail")
+        String fail();
+
+        @RequestLine("GET /hold")
+        String hold();
+    }
+
+    @Before
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        stub("/ok", e -> respond(e, 200));
+        stub("/fail", e -> respond(e, 500));
+        stub("/slow", e -> {
+            sleep(500);
+            respond(e, 200);
+        });
+        stub("/hold", e -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            respond(e, 200);
+        });
+        server.start();
+
+        httpClient = HttpClients.custom().setMaxConnTotal(10).setMaxConnPerRoute(10).build();
+        ResilientClient client = new ResilientClient(new ApacheHttpClient(httpClient), Arrays.asList(
+                new ResilientClient.Policy("slow", "GET", "/slow", 0, 100, 10, new CircuitBreaker(100, 50, 60000)),
+                new ResilientClient.Policy("fail", "GET", "/fail", 0, 0, 10, new CircuitBreaker(4, 50, 100)),
+                new ResilientClient.Policy("hold", "GET", "/hold", 0, 0, 1, new CircuitBreaker(100, 50, 60000))),
+                new ResilientClient.Policy("default", "", "", 0, 0, 10, new CircuitBreaker(100, 50, 60000)), new SimpleMeterRegistry());
+        api = Feign.builder().client(client).retryer(Retryer.NEVER_RETRY)
+                .target(StubApi.class, "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @After
+    public void stop() throws IOException {
+        release.countDown();
+        server.stop(0);
+        httpClient.close();
+    }
+
+    @Test
+    public void success() {
+        Assert.assertEquals("ok", api.ok());
+    }
+
+    @Test
+    public void readTimeout() {
+        long start = System.currentTimeMillis();
+        try {
+            api.slow();
+            Assert.fail();
+        } catch (RetryableException ex) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 400);
+        }
+    }
+
+    @Test
+    public void circuitBreaker() {
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(500, status(api::fail));
+        }
+
+        // 熔断期间不发出请求
+        int count = hits.get();
+        Assert.assertEquals(503, status(api::fail));
+        Assert.assertEquals(count, hits.get());
+
+        // 熔断时间结束后放行试探请求
+        sleep(150);
+        Assert.assertEquals(500, status(api::fail));
+        Assert.assertEquals(count + 1, hits.get());
+        Assert.assertEquals(503, status(api::fail));
+    }
+
+    @Test
+    public void bulkhead() throws Exception {
+        CompletableFuture<String> holding = CompletableFuture.supplyAsync(api::hold);
+        while (hits.get() == 0) {
+            sleep(10);
+        }
+
+        Assert.assertEquals(503, status(api::hold));
+        release.countDown();
+        Assert.assertEquals("ok", holding.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("ok", api.hold());
+    }
+
+    private void stub(String path, HttpHandler handler) {
+        server.createContext(path, e -> {
+            hits.incrementAndGet();
+            handler.handle(e);
+        });
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static int status(Runnable call) {
+        try {
+            call.run();
+            return 200;
+        } catch (FeignException ex) {
+            return ex.status();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}